@@ -0,0 +1,276 @@
+package semulator.cli;
+
+import semulator.execution.ArgumentEvaluation;
+import semulator.execution.ParameterSweep;
+import semulator.execution.ProgramExecutorImpl;
+import semulator.execution.RunResult;
+import semulator.execution.TraceFormat;
+import semulator.execution.TraceLevel;
+import semulator.execution.TraceWriter;
+import semulator.input.XmlTranslator.Factory;
+import semulator.program.ExecutionStrategy;
+import semulator.program.FunctionExecutor;
+import semulator.program.FunctionExecutorImpl;
+import semulator.program.Optimization;
+import semulator.program.ProgramImage;
+import semulator.program.SprogramImpl;
+import semulator.variable.VariableImpl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a program from the command line, without the GUI:
+ *   CliRunner program.xml [--degree N] [--fast-cycles] [--optimize keep-cycles|full] [--strategy blocks|compiled] [--parallel] [inputs ...]
+ * Every input vector is a comma separated list like 3,4 and gets one output line with its result and cycles.
+ * With no vectors on the command line they are read from stdin, one per line.
+ * --sweep 0-500,0-500 or --sweep-csv file.csv run a ParameterSweep instead and print it as csv.
+ * --fast-cycles runs the program at degree 0 and reports the cycles of degree N without expanding it.
+ * --optimize lets the run skip the ops expansion leaves that change nothing, see Optimization.
+ * --strategy blocks runs straight runs of basic ops at once, compiled runs a program of basic ops as JVM code,
+ * see ExecutionStrategy.
+ * --trace file streams every step of a single run to the file as it happens, --trace-format binary|csv,
+ * see TraceWriter.
+ */
+public class CliRunner {
+
+    private static final String USAGE =
+            "usage: CliRunner <program.xml> [--degree N] [--fast-cycles] [--optimize keep-cycles|full]"
+            + " [--strategy interpreted|blocks|compiled] [--parallel]"
+            + " [--sweep ranges | --sweep-csv file] [--trace file [--trace-format binary|csv]] [x1,x2,... ...]";
+
+    public static void main(String[] args) {
+        try {
+            System.exit(run(args, System.out));
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public static int run(String[] args, PrintStream out) {
+        String file = null;
+        int degree = 0;
+        boolean parallel = false;
+        boolean fastCycles = false;
+        Optimization optimization = Optimization.NONE;
+        ExecutionStrategy strategy = ExecutionStrategy.INTERPRETED;
+        String sweepRanges = null;
+        String sweepCsv = null;
+        String traceFile = null;
+        TraceFormat traceFormat = TraceFormat.BINARY;
+        List<List<Long>> vectors = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--degree":
+                    if (++i == args.length)
+                        throw new IllegalArgumentException("--degree needs a value\n" + USAGE);
+                    degree = (int) Math.min(parseNumber(args[i], "degree"), Integer.MAX_VALUE);
+                    break;
+                case "--parallel":
+                    parallel = true;
+                    break;
+                case "--fast-cycles":
+                    fastCycles = true;
+                    break;
+                case "--optimize":
+                    if (++i == args.length)
+                        throw new IllegalArgumentException("--optimize needs keep-cycles or full\n" + USAGE);
+                    optimization = parseOptimization(args[i]);
+                    break;
+                case "--strategy":
+                    if (++i == args.length)
+                        throw new IllegalArgumentException("--strategy needs interpreted, blocks or compiled\n" + USAGE);
+                    strategy = parseStrategy(args[i]);
+                    break;
+                case "--sweep":
+                    if (++i == args.length)
+                        throw new IllegalArgumentException("--sweep needs ranges like 0-500,0-500\n" + USAGE);
+                    sweepRanges = args[i];
+                    break;
+                case "--sweep-csv":
+                    if (++i == args.length)
+                        throw new IllegalArgumentException("--sweep-csv needs a file\n" + USAGE);
+                    sweepCsv = args[i];
+                    break;
+                case "--trace":
+                    if (++i == args.length)
+                        throw new IllegalArgumentException("--trace needs a file\n" + USAGE);
+                    traceFile = args[i];
+                    break;
+                case "--trace-format":
+                    if (++i == args.length)
+                        throw new IllegalArgumentException("--trace-format needs binary or csv\n" + USAGE);
+                    traceFormat = parseTraceFormat(args[i]);
+                    break;
+                default:
+                    if (file == null)
+                        file = args[i];
+                    else
+                        vectors.add(parseVector(args[i]));
+            }
+        }
+        if (file == null)
+            throw new IllegalArgumentException("no program file\n" + USAGE);
+        if (traceFile != null && (fastCycles || sweepRanges != null || sweepCsv != null || vectors.size() != 1))
+            throw new IllegalArgumentException("--trace needs a single input vector and no --fast-cycles or sweep\n" + USAGE);
+
+        FunctionExecutor program = new Factory().loadProgramFromXml(new File(file)).myClone();
+        ((SprogramImpl) program).calculateQuoteDegree();
+        int maxDegree = program.getProgramDegree();
+        if (degree > maxDegree)
+            throw new IllegalArgumentException("degree " + degree + " is above the program's maximal degree " + maxDegree);
+        int cycleDegree = fastCycles ? degree : 0;
+        for (int i = 0; i < degree - cycleDegree; i++) { // one degree at a time, the way the UI expands
+            program.resetSnap();
+            program.expandProgram(1);
+        }
+        if (parallel)
+            program.setArgumentEvaluation(ArgumentEvaluation.PARALLEL);
+        program.setOptimization(optimization);
+        program.setExecutionStrategy(strategy);
+
+        if (sweepRanges != null || sweepCsv != null) {
+            sweep(program, cycleDegree, sweepRanges, sweepCsv, out);
+            return 0;
+        }
+        if (traceFile != null) {
+            out.println(traceVector(program, vectors.get(0), Path.of(traceFile), traceFormat));
+            return 0;
+        }
+        if (vectors.isEmpty())
+            vectors = readVectors();
+        for (List<Long> inputs : vectors)
+            out.println(runVector(program, cycleDegree, inputs));
+        return 0;
+    }
+
+    private static void sweep(FunctionExecutor program, int cycleDegree, String ranges, String csvFile, PrintStream out) {
+        ParameterSweep sweep = new ParameterSweep(program, ((SprogramImpl) program).getFunctions(),
+                ParameterSweep.DEFAULT_BATCH_SIZE, cycleDegree);
+        out.println(ParameterSweep.csvHeader(program.getInputVarSize()));
+        if (ranges != null) {
+            sweep.run(ParameterSweep.ranges(ranges), result -> out.println(ParameterSweep.csvRow(result)));
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(csvFile))) {
+            sweep.run(ParameterSweep.csv(reader), result -> out.println(ParameterSweep.csvRow(result)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not read " + csvFile + ": " + e.getMessage());
+        }
+    }
+
+    private static String runVector(FunctionExecutor program, int cycleDegree, List<Long> inputs) {
+        long result;
+        int cycles;
+        if (cycleDegree > 0) {
+            RunResult run = ((FunctionExecutorImpl) program).runAtDegree(inputs.stream().mapToLong(Long::longValue).toArray(),
+                    ((SprogramImpl) program).getFunctions(), cycleDegree);
+            result = run.getResult();
+            cycles = run.getCycles();
+        } else {
+            ProgramExecutorImpl.run(program, inputs, ((SprogramImpl) program).getFunctions(), TraceLevel.NONE, 1);
+            result = program.getVariableValue(VariableImpl.RESULT);
+            cycles = program.calculateCycles();
+        }
+        return resultLine(inputs, result, cycles);
+    }
+
+    // runs the program once with every step going to the trace file
+    private static String traceVector(FunctionExecutor program, List<Long> inputs, Path file, TraceFormat format) {
+        ProgramImage image = ((FunctionExecutorImpl) program).getImage();
+        try (TraceWriter writer = new TraceWriter(file, format, image.getVariables(), image.getVariableSlots())) {
+            program.run(inputs, ((SprogramImpl) program).getFunctions(), writer);
+        } catch (UncheckedIOException e) {
+            throw new IllegalArgumentException(e.getMessage() + ": " + e.getCause().getMessage());
+        }
+        return resultLine(inputs, program.getVariableValue(VariableImpl.RESULT), program.calculateCycles());
+    }
+
+    private static String resultLine(List<Long> inputs, long result, int cycles) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < inputs.size(); i++)
+            line.append(i == 0 ? "" : ",").append(inputs.get(i));
+        return line.append(" -> y=").append(result)
+                .append(" cycles=").append(cycles)
+                .toString();
+    }
+
+    private static List<List<Long>> readVectors() {
+        List<List<Long>> vectors = new ArrayList<>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank())
+                    vectors.add(parseVector(line.trim()));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not read inputs: " + e.getMessage());
+        }
+        return vectors;
+    }
+
+    private static List<Long> parseVector(String text) {
+        List<Long> vector = new ArrayList<>();
+        for (String value : text.split(",")) {
+            vector.add(parseNumber(value.trim(), "input"));
+        }
+        return vector;
+    }
+
+    private static Optimization parseOptimization(String text) {
+        switch (text) {
+            case "keep-cycles":
+                return Optimization.KEEP_CYCLES;
+            case "full":
+                return Optimization.FULL;
+            default:
+                throw new IllegalArgumentException("invalid optimization: " + text + ", use keep-cycles or full");
+        }
+    }
+
+    private static ExecutionStrategy parseStrategy(String text) {
+        switch (text) {
+            case "interpreted":
+                return ExecutionStrategy.INTERPRETED;
+            case "blocks":
+                return ExecutionStrategy.BLOCKS;
+            case "compiled":
+                return ExecutionStrategy.COMPILED;
+            default:
+                throw new IllegalArgumentException("invalid strategy: " + text + ", use interpreted, blocks or compiled");
+        }
+    }
+
+    private static TraceFormat parseTraceFormat(String text) {
+        switch (text) {
+            case "binary":
+                return TraceFormat.BINARY;
+            case "csv":
+                return TraceFormat.CSV;
+            default:
+                throw new IllegalArgumentException("invalid trace format: " + text + ", use binary or csv");
+        }
+    }
+
+    private static long parseNumber(String text, String what) {
+        try {
+            long number = Long.parseLong(text);
+            if (number < 0)
+                throw new IllegalArgumentException(what + " must not be negative, got " + text);
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid " + what + ": " + text);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package semulator.execution;
+
+// how the function arguments of a call, like (g, x1) and (h, x2) in (f, (g, x1), (h, x2)), are evaluated
+public enum ArgumentEvaluation {
+    SEQUENTIAL, // one after the other on the running thread
+    PARALLEL    // concurrently on the common ForkJoinPool, result and cycles are the same as SEQUENTIAL
+}
@@ -0,0 +1,111 @@
+package semulator.execution;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of earlier calls of one function, by argument values.
+ * S-functions are pure, so a call with arguments that were seen before is answered from here,
+ * together with the cycles the call took. Holds at most capacity entries, least recently used go first.
+ */
+public class CallMemo {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Map<Arguments, Entry> entries;
+    private long hits;
+    private long misses;
+
+    public CallMemo() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CallMemo(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive, got " + capacity);
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Arguments, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // null if the call was not seen yet
+    public synchronized Entry get(long[] arguments) {
+        Entry entry = entries.get(new Arguments(arguments));
+        if (entry == null)
+            misses++;
+        else
+            hits++;
+        return entry;
+    }
+
+    public synchronized Entry put(long[] arguments, long result, int cycles) {
+        Entry entry = new Entry(result, cycles);
+        entries.put(new Arguments(arguments.clone()), entry);
+        return entry;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    public static final class Entry {
+        private final long result;
+        private final int cycles;
+
+        private Entry(long result, int cycles) {
+            this.result = result;
+            this.cycles = cycles;
+        }
+
+        public long getResult() {
+            return result;
+        }
+
+        public int getCycles() {
+            return cycles;
+        }
+
+        // the same call with the cycles of evaluating its arguments added
+        public Entry plusCycles(int argumentCycles) {
+            return argumentCycles == 0 ? this : new Entry(result, cycles + argumentCycles);
+        }
+    }
+
+    private static final class Arguments {
+        private final long[] values;
+        private final int hash;
+
+        private Arguments(long[] values) {
+            this.values = values;
+            hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Arguments other && Arrays.equals(values, other.values);
+        }
+    }
+}
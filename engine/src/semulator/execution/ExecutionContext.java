@@ -1,18 +1,18 @@
 package semulator.execution;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.label.Label;
-import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 
 public interface ExecutionContext {
 
-    Long getVariableValue(VariableImpl v);
+    long get(int slot);
+    void set(int slot, long value);
+    void increaseCycleCounter(int cycles);
+    int getCycles();
+    VariableSlots getSlots();
+    ArgumentEvaluation getArgumentEvaluation();
     Map<Label, AbstractOpBasic> getLabelMap();
-    void addSnap(ArrayList<VariableImpl> vars, ArrayList<Long> vals);
-    Map<VariableImpl, Long> getCurrSnap();
-    List<Map<VariableImpl, Long>> getSnapshots();
     void reset();
-}
\ No newline at end of file
+}
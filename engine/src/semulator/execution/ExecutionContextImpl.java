@@ -2,56 +2,78 @@ package semulator.execution;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.label.FixedLabel;
 import semulator.label.Label;
-import semulator.label.LabelImpl;
 import semulator.program.FunctionExecutor;
 import semulator.variable.VariableImpl;
-import semulator.variable.VariableType;
+import semulator.variable.VariableSlots;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class ExecutionContextImpl implements ExecutionContext, ExpandContext {
 
-    private ArrayList<Map<VariableImpl, Long>> snapshots; // to turn off the comment
-    private Map<VariableImpl, Long> currSnap;
+    private final VariableSlots slots;
+    private long[] registers; // value of every variable, indexed by its slot
+    private int cycles;
+    private ArgumentEvaluation argumentEvaluation = ArgumentEvaluation.SEQUENTIAL;
     private Map<Label, AbstractOpBasic> labelMap;
 
-    public int getLabelindex() {
-        return labelindex;
-    }
-
-    private int labelindex = 1;
-
-    public int getWorkVarIndex() {
-        return workVarIndex;
-    }
-
-    private int workVarIndex = 1;
-
-
+    private final NameAllocator names;
 
     public void setLabelMap(FunctionExecutor program) {
         labelMap = new HashMap<>();
         for (var op : program.getOps()) {
             if (op.getLabel() != FixedLabel.EMPTY) // we don't want to add empty labels to the map
-                labelMap.put(op.getLabel(), op);
+                addLabel(op.getLabel(), op);
         }
     }
     //create a deep copy constructor
     public ExecutionContextImpl(ExecutionContext context) {
         //create a deep copy constructor
-        snapshots = new ArrayList<>(context.getSnapshots());
-        currSnap = new HashMap<>(context.getCurrSnap());
+        slots = new VariableSlots(context.getSlots());
+        registers = new long[slots.size()];
         labelMap = new HashMap<>(context.getLabelMap());
-        labelindex = getLabelindex();
-        workVarIndex = getWorkVarIndex();
+        argumentEvaluation = context.getArgumentEvaluation();
+        if (context instanceof ExecutionContextImpl impl) {
+            names = new NameAllocator(impl.names, slots);
+        } else {
+            names = new NameAllocator(slots);
+            labelMap.keySet().forEach(names::useLabel);
+        }
+    }
+    @Override
+    public long get(int slot) {
+        return registers[slot];
+    }
 
+    @Override
+    public void set(int slot, long value) {
+        registers[slot] = value;
     }
-    public Map<VariableImpl, Long> getCurrSnap()
-    {
-        return Map.copyOf(currSnap);
+
+    @Override
+    public void increaseCycleCounter(int cycles) {
+        this.cycles += cycles;
+    }
+
+    @Override
+    public int getCycles() {
+        return cycles;
+    }
+
+    @Override
+    public VariableSlots getSlots() {
+        return slots;
+    }
+
+    @Override
+    public ArgumentEvaluation getArgumentEvaluation() {
+        return argumentEvaluation;
+    }
+
+    public void setArgumentEvaluation(ArgumentEvaluation argumentEvaluation) {
+        this.argumentEvaluation = argumentEvaluation;
     }
 
 
@@ -61,82 +83,60 @@ public class ExecutionContextImpl implements ExecutionContext, ExpandContext {
     }
 
     public ExecutionContextImpl() {
-        snapshots = new ArrayList<>(); // move to another function that will handle inputs from the user
+        slots = new VariableSlots();
+        registers = new long[slots.size()];
         labelMap = new HashMap<>();
-        currSnap = new HashMap<>();
-    }
-
-    @Override
-    public List<Map<VariableImpl, Long>> getSnapshots() {
-        return snapshots;
+        names = new NameAllocator(slots);
     }
 
     @Override
     public void reset() {
-        snapshots.clear();
-        currSnap.clear();
+        Arrays.fill(registers, 0L);
+        cycles = 0;
     }
 
     public void createSnap(FunctionExecutor program, List<Long> input) {
 
-        Map<VariableImpl, Long> snap = new HashMap<>();
-        VariableImpl tmp;
+        for (int i = 0; i < program.getAmountOfVars(); i++) // make sure every var has a slot before sizing the registers
+            slots.slotOf(program.getNextVar(i));
+        for (VariableImpl v : program.getAllVars())
+            slots.slotOf(v);
 
-        for (int i = 0; i < program.getAmountOfVars(); i++) { //fills all the input var with the input and the rest with 0
-            tmp = program.getNextVar(i);
-            if (i < input.size())
-                snap.put(tmp, input.get(i));
-            else
-                snap.put( tmp ,0L);
-        }
+        if (registers.length != slots.size())
+            registers = new long[slots.size()];
+        else
+            Arrays.fill(registers, 0L);
 
-        for(VariableImpl v : program.getAllVars()) // make sure all vars are in the snap and if not add them with value 0
-        {
-            snap.computeIfAbsent(v, k -> 0L);
+        for (int i = 0; i < program.getAmountOfVars() && i < input.size(); i++) { //fills the input vars, the rest stay 0
+            registers[slots.find(program.getNextVar(i))] = input.get(i);
         }
-       snap.put(VariableImpl.RESULT, 0L); //add the result var
-       var first = Map.copyOf(snap);  // making an immutable copy
-       snapshots.add(first);
-       currSnap = snap;
     }
 
-    public Long getVariableValue(VariableImpl v) {return currSnap.get(v);}
-
-    @Override
-    public void addSnap(ArrayList<VariableImpl> vars, ArrayList<Long> vals) {
-        if (vars.size() != vals.size()) {
-            throw new IllegalArgumentException("vars and vals must have the same length");
-        }
-
-       for (int i  = 0; i < vals.size(); i++) {
-           currSnap.put(vars.get(i),vals.get(i)); // the current snapshot
-        }
-        var first = Map.copyOf(currSnap);  // making an immutable copy
-        snapshots.add(first);
+    public Long getVariableValue(VariableImpl v) {
+        int slot = slots.find(v);
+        if (slot == VariableSlots.NO_SLOT)
+            return null;
+        return slot < registers.length ? registers[slot] : 0L;
     }
 
+    // puts label in the label map, newUniqueLabel never hands it out after that
+    public void addLabel(Label label, AbstractOpBasic op) {
+        labelMap.put(label, op);
+        names.useLabel(label);
+    }
 
     @Override
     public Label newUniqueLabel() {
-        while (labelMap.containsKey(new LabelImpl(labelindex++))) {//ignore and just raise the index
-             } //empty beacuse the ++ is needed
-        return new LabelImpl(labelindex-1);
+        return names.newLabel();
     }
 
     @Override
     public VariableImpl newWorkVar() {
-        VariableImpl tmp;
-        while (currSnap.containsKey(new VariableImpl(VariableType.WORK,workVarIndex)))
-        {
-            workVarIndex++;
-        };
-        tmp =  new VariableImpl(VariableType.WORK,workVarIndex);
-        currSnap.put(tmp,0L);
-        return tmp;
+        return names.newWorkVar();
     }
 
     @Override
     public void addOpWithNewLabel(AbstractOpBasic op ) {
-        labelMap.put(newUniqueLabel(),op);
+        addLabel(newUniqueLabel(), op);
     }
 }
@@ -0,0 +1,95 @@
+package semulator.execution;
+
+import semulator.impl.api.skeleton.AbstractOpBasic;
+import semulator.label.Label;
+import semulator.variable.VariableSlots;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Everything that changes while a program runs: its registers, the op it is at and the cycles so far.
+ * The program itself is a ProgramImage that never changes, so one image can run in many states at once,
+ * a run or a function call only costs the allocation of its state. Function calls take their states
+ * from a pool of the function and give them back when they return.
+ */
+public class ExecutionState implements ExecutionContext {
+
+    private final VariableSlots slots;
+    private long[] registers;
+    private ArgumentEvaluation argumentEvaluation;
+    private int pc;
+    private int cycles;
+
+    public ExecutionState(VariableSlots slots, int registerCount, ArgumentEvaluation argumentEvaluation) {
+        this.slots = slots;
+        this.registers = new long[registerCount];
+        this.argumentEvaluation = argumentEvaluation;
+    }
+
+    // makes the state ready for a new run, the registers grow if the program got new variables since the last one
+    public void enter(int registerCount, ArgumentEvaluation argumentEvaluation) {
+        this.argumentEvaluation = argumentEvaluation;
+        if (registers.length < registerCount)
+            registers = new long[registerCount];
+        else
+            Arrays.fill(registers, 0L);
+        pc = 0;
+        cycles = 0;
+    }
+
+    public int getPc() {
+        return pc;
+    }
+
+    public void setPc(int pc) {
+        this.pc = pc;
+    }
+
+    @Override
+    public long get(int slot) {
+        return registers[slot];
+    }
+
+    @Override
+    public void set(int slot, long value) {
+        registers[slot] = value;
+    }
+
+    // the registers themselves, for code that runs on them directly. there may be more than the program uses
+    public long[] getRegisters() {
+        return registers;
+    }
+
+    @Override
+    public void increaseCycleCounter(int cycles) {
+        this.cycles += cycles;
+    }
+
+    @Override
+    public int getCycles() {
+        return cycles;
+    }
+
+    @Override
+    public VariableSlots getSlots() {
+        return slots;
+    }
+
+    @Override
+    public ArgumentEvaluation getArgumentEvaluation() {
+        return argumentEvaluation;
+    }
+
+    // a run never looks a label up, the image resolved every jump already
+    @Override
+    public Map<Label, AbstractOpBasic> getLabelMap() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void reset() {
+        enter(registers.length, argumentEvaluation);
+    }
+}
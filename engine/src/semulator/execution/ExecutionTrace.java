@@ -0,0 +1,135 @@
+package semulator.execution;
+
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Step by step record of a run for the debugger.
+ * Each step only keeps (pc, slot, new value) and the whole register file
+ * is copied every checkpointInterval steps, the state of a step is rebuilt from the checkpoint before it.
+ * The steps are kept in primitive arrays on the heap, or for a run too long for that
+ * in a memory mapped file (see mapped), and then only the steps looked at are read in.
+ */
+public class ExecutionTrace implements TraceSink, AutoCloseable {
+
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1024;
+
+    private final List<VariableImpl> variables;
+    private final int[] variableSlots;
+    private final int checkpointInterval;
+    private final TraceStore store;
+
+    private int registerCount;
+
+    // last rebuilt state, stepping forward from it is cheaper than going back to a checkpoint
+    private long[] cursorState;
+    private int cursorStep = -1;
+
+    public ExecutionTrace(List<VariableImpl> variables, int[] variableSlots) {
+        this(variables, variableSlots, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    public ExecutionTrace(List<VariableImpl> variables, int[] variableSlots, int checkpointInterval) {
+        this(variables, variableSlots, checkpointInterval, new HeapTraceStore());
+    }
+
+    private ExecutionTrace(List<VariableImpl> variables, int[] variableSlots, int checkpointInterval, TraceStore store) {
+        if (checkpointInterval < 1)
+            throw new IllegalArgumentException("checkpoint interval must be positive, got " + checkpointInterval);
+        this.variables = variables;
+        this.variableSlots = variableSlots;
+        this.checkpointInterval = checkpointInterval;
+        this.store = store;
+    }
+
+    // a trace that keeps its steps in a file under a temp directory, close deletes it
+    public static ExecutionTrace mapped(List<VariableImpl> variables, int[] variableSlots) {
+        return new ExecutionTrace(variables, variableSlots, DEFAULT_CHECKPOINT_INTERVAL, new MappedTraceStore());
+    }
+
+    @Override
+    public void start(int pc, ExecutionContext context) {
+        cursorStep = -1;
+        registerCount = context.getSlots().size();
+        store.clear(registerCount);
+        cursorState = new long[registerCount];
+        store.add(pc, VariableSlots.NO_SLOT, 0L);
+        store.addCheckpoint(copyRegisters(context));
+    }
+
+    @Override
+    public void step(long step, int pc, int slot, ExecutionContext context) {
+        store.add(pc, slot, slot == VariableSlots.NO_SLOT ? 0L : context.get(slot));
+        if ((store.size() - 1) % checkpointInterval == 0)
+            store.addCheckpoint(copyRegisters(context));
+    }
+
+    @Override
+    public void finish(long steps, int pc, ExecutionContext context) {
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    public boolean isEmpty() {
+        return store.size() == 0;
+    }
+
+    public int getPc(int step) {
+        checkStep(step);
+        return store.getPc(step);
+    }
+
+    // a mapped trace deletes its file, one on the heap has nothing to give back
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    public long getValue(int step, VariableImpl variable) {
+        int index = variables.indexOf(variable);
+        if (index < 0)
+            throw new IllegalArgumentException("variable " + variable.getRepresentation() + " is not traced");
+        return stateAt(step)[variableSlots[index]];
+    }
+
+    public TreeMap<VariableImpl, Long> getSnapshot(int step) {
+        long[] state = stateAt(step);
+        TreeMap<VariableImpl, Long> snap = new TreeMap<>(VariableImpl.BY_NAME);
+        for (int i = 0; i < variableSlots.length; i++)
+            snap.put(variables.get(i), state[variableSlots[i]]);
+        return snap;
+    }
+
+    private long[] stateAt(int step) {
+        checkStep(step);
+        int checkpointStep = (step / checkpointInterval) * checkpointInterval;
+        if (cursorStep < 0 || step < cursorStep || cursorStep < checkpointStep) {
+            store.readCheckpoint(step / checkpointInterval, cursorState);
+            cursorStep = checkpointStep;
+        }
+        while (cursorStep < step) {
+            cursorStep++;
+            int slot = store.getSlot(cursorStep);
+            if (slot != VariableSlots.NO_SLOT)
+                cursorState[slot] = store.getValue(cursorStep);
+        }
+        return cursorState;
+    }
+
+    private long[] copyRegisters(ExecutionContext context) {
+        long[] registers = new long[registerCount];
+        for (int slot = 0; slot < registerCount; slot++)
+            registers[slot] = context.get(slot);
+        return registers;
+    }
+
+    private void checkStep(int step) {
+        if (step < 0 || step >= store.size())
+            throw new IndexOutOfBoundsException("step " + step + " is out of the trace (size " + store.size() + ")");
+    }
+}
@@ -0,0 +1,72 @@
+package semulator.execution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// keeps the steps in primitive arrays that double when they are full
+class HeapTraceStore implements TraceStore {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final List<long[]> checkpoints = new ArrayList<>();
+    private int size;
+    private int[] pcs = new int[INITIAL_CAPACITY];
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+
+    @Override
+    public void add(int pc, int slot, long value) {
+        if (size == pcs.length) {
+            int capacity = size * 2;
+            pcs = Arrays.copyOf(pcs, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        pcs[size] = pc;
+        slots[size] = slot;
+        values[size] = value;
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getPc(int step) {
+        return pcs[step];
+    }
+
+    @Override
+    public int getSlot(int step) {
+        return slots[step];
+    }
+
+    @Override
+    public long getValue(int step) {
+        return values[step];
+    }
+
+    @Override
+    public void addCheckpoint(long[] registers) {
+        checkpoints.add(registers); // a copy of its own, the trace never touches it again
+    }
+
+    @Override
+    public void readCheckpoint(int index, long[] registers) {
+        long[] checkpoint = checkpoints.get(index);
+        System.arraycopy(checkpoint, 0, registers, 0, checkpoint.length);
+    }
+
+    @Override
+    public void clear(int registerCount) {
+        size = 0;
+        checkpoints.clear();
+    }
+
+    @Override
+    public void close() {
+    }
+}
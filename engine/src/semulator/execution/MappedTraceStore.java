@@ -0,0 +1,154 @@
+package semulator.execution;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the steps in files of fixed width records under a temp directory of their own, mapped into memory
+ * a segment at a time. Step i is at i * STEP_BYTES, so any step is found without reading the ones before it,
+ * and the pages nobody looks at stay on disk, not on the heap. The files are deleted on close, or when the JVM exits.
+ */
+class MappedTraceStore implements TraceStore {
+
+    static final int STEP_BYTES = 16; // pc, slot and value
+    private static final int SEGMENT_BYTES = 1 << 26;
+
+    private final Path directory;
+    private final RecordFile steps;
+    private final RecordFile checkpoints;
+    private int size;
+    private int checkpointCount;
+
+    MappedTraceStore() {
+        try {
+            directory = Files.createTempDirectory("semulator-trace");
+            directory.toFile().deleteOnExit();
+            steps = new RecordFile(directory.resolve("steps"));
+            checkpoints = new RecordFile(directory.resolve("checkpoints"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not create a trace file", e);
+        }
+        steps.reset(STEP_BYTES);
+    }
+
+    @Override
+    public void add(int pc, int slot, long value) {
+        ByteBuffer segment = steps.segment(size);
+        int offset = steps.offset(size);
+        segment.putInt(offset, pc);
+        segment.putInt(offset + 4, slot);
+        segment.putLong(offset + 8, value);
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getPc(int step) {
+        return steps.segment(step).getInt(steps.offset(step));
+    }
+
+    @Override
+    public int getSlot(int step) {
+        return steps.segment(step).getInt(steps.offset(step) + 4);
+    }
+
+    @Override
+    public long getValue(int step) {
+        return steps.segment(step).getLong(steps.offset(step) + 8);
+    }
+
+    @Override
+    public void addCheckpoint(long[] registers) {
+        ByteBuffer segment = checkpoints.segment(checkpointCount);
+        int offset = checkpoints.offset(checkpointCount);
+        for (int i = 0; i < registers.length; i++)
+            segment.putLong(offset + i * 8, registers[i]);
+        checkpointCount++;
+    }
+
+    @Override
+    public void readCheckpoint(int index, long[] registers) {
+        ByteBuffer segment = checkpoints.segment(index);
+        int offset = checkpoints.offset(index);
+        for (int i = 0; i < registers.length; i++)
+            registers[i] = segment.getLong(offset + i * 8);
+    }
+
+    @Override
+    public void clear(int registerCount) {
+        size = 0;
+        checkpointCount = 0;
+        checkpoints.reset(registerCount * 8);
+    }
+
+    @Override
+    public void close() {
+        steps.close();
+        checkpoints.close();
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            // deleteOnExit takes care of it
+        }
+    }
+
+    // a file of records of one size, mapped in segments of whole records as it grows
+    private static final class RecordFile {
+        private final Path path;
+        private final FileChannel channel;
+        private final List<MappedByteBuffer> segments = new ArrayList<>();
+        private int recordBytes = -1;
+        private int recordsPerSegment;
+
+        RecordFile(Path path) throws IOException {
+            this.path = path;
+            path.toFile().deleteOnExit();
+            channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        void reset(int recordBytes) {
+            if (recordBytes == this.recordBytes)
+                return;
+            this.recordBytes = Math.max(recordBytes, 1);
+            recordsPerSegment = Math.max(SEGMENT_BYTES / this.recordBytes, 1);
+            segments.clear();
+        }
+
+        ByteBuffer segment(long record) {
+            int index = (int) (record / recordsPerSegment);
+            long segmentBytes = (long) recordsPerSegment * recordBytes;
+            try {
+                while (segments.size() <= index) // mapping past the end makes the file longer
+                    segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * segmentBytes, segmentBytes));
+            } catch (IOException e) {
+                throw new UncheckedIOException("could not grow the trace file " + path, e);
+            }
+            return segments.get(index);
+        }
+
+        int offset(long record) {
+            return (int) (record % recordsPerSegment) * recordBytes;
+        }
+
+        void close() {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // deleteOnExit takes care of it
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package semulator.execution;
+
+import semulator.label.Label;
+import semulator.label.LabelImpl;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
+import semulator.variable.VariableType;
+
+import java.util.BitSet;
+
+/**
+ * Hands out the labels and work variables expansion adds to a program.
+ * Numbers only go up, skipping the ones the program already uses: a label Ln is used once it is in the label map,
+ * a zn once it has a slot. Finding the next free number is a bit lookup, nothing is built to probe with.
+ */
+public class NameAllocator {
+
+    private final VariableSlots slots; // knows which zn are used
+    private final BitSet labels;       // n of every Ln in the label map
+    private int nextLabel = 1;
+    private int nextWorkVar = 1;
+
+    public NameAllocator(VariableSlots slots) {
+        this.slots = slots;
+        labels = new BitSet();
+    }
+
+    // goes on from where other is, for the copy of a program that has the copy of other's slots
+    public NameAllocator(NameAllocator other, VariableSlots slots) {
+        this.slots = slots;
+        labels = (BitSet) other.labels.clone();
+        nextLabel = other.nextLabel;
+        nextWorkVar = other.nextWorkVar;
+    }
+
+    // label is in the label map, it is never handed out
+    public void useLabel(Label label) {
+        if (label instanceof LabelImpl impl && impl.getNumber() >= 0)
+            labels.set(impl.getNumber());
+    }
+
+    public Label newLabel() {
+        int number = labels.nextClearBit(nextLabel);
+        nextLabel = number + 1;
+        return LabelImpl.of(number);
+    }
+
+    // the work variable gets its slot right away
+    public VariableImpl newWorkVar() {
+        int number = slots.nextFreeWorkNumber(nextWorkVar);
+        nextWorkVar = number + 1;
+        VariableImpl variable = VariableImpl.of(VariableType.WORK, number);
+        slots.slotOf(variable);
+        return variable;
+    }
+}
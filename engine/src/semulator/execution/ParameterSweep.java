@@ -0,0 +1,190 @@
+package semulator.execution;
+
+import semulator.program.FunctionExecutor;
+import semulator.program.FunctionExecutorImpl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Runs one program over many input vectors, like every x1 in [0,500] with every x2 in [0,500].
+ * The vectors are taken in batches, the runs of a batch are spread over all cores and each one gets
+ * its own frame, the program itself is only read. Results are handed out in the order of the vectors.
+ * With a cycle degree the cycles are those of the program expanded that many more times, see CycleModel.
+ */
+public class ParameterSweep {
+
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private final FunctionExecutorImpl program;
+    private final List<FunctionExecutor> functions;
+    private final int batchSize;
+    private final int cycleDegree;
+
+    public ParameterSweep(FunctionExecutor program, List<FunctionExecutor> functions) {
+        this(program, functions, DEFAULT_BATCH_SIZE);
+    }
+
+    public ParameterSweep(FunctionExecutor program, List<FunctionExecutor> functions, int batchSize) {
+        this(program, functions, batchSize, 0);
+    }
+
+    public ParameterSweep(FunctionExecutor program, List<FunctionExecutor> functions, int batchSize, int cycleDegree) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batch size must be positive, got " + batchSize);
+        this.program = (FunctionExecutorImpl) program;
+        this.functions = functions;
+        this.batchSize = batchSize;
+        this.cycleDegree = cycleDegree;
+    }
+
+    // runs every vector and gives its result to out. stops early if the thread is interrupted, returns how many ran
+    public long run(Iterator<long[]> vectors, Consumer<RunResult> out) {
+        long count = 0;
+        List<long[]> batch = new ArrayList<>(batchSize);
+        RunResult[] results = new RunResult[batchSize];
+        while (vectors.hasNext() && !Thread.currentThread().isInterrupted()) {
+            batch.clear();
+            while (batch.size() < batchSize && vectors.hasNext())
+                batch.add(vectors.next());
+
+            IntStream.range(0, batch.size()).parallel()
+                    .forEach(i -> results[i] = cycleDegree == 0
+                            ? program.runIsolated(batch.get(i), functions)
+                            : program.runAtDegree(batch.get(i), functions, cycleDegree));
+            for (int i = 0; i < batch.size(); i++) {
+                out.accept(results[i]);
+                results[i] = null;
+            }
+            count += batch.size();
+        }
+        return count;
+    }
+
+    // every vector with from[i] <= x(i+1) <= to[i], the last input changes fastest
+    public static Iterator<long[]> ranges(long[] from, long[] to) {
+        if (from.length != to.length)
+            throw new IllegalArgumentException("got " + from.length + " range starts but " + to.length + " range ends");
+        for (int i = 0; i < from.length; i++) {
+            if (from[i] < 0 || from[i] > to[i])
+                throw new IllegalArgumentException("invalid range for x" + (i + 1) + ": " + from[i] + "-" + to[i]);
+        }
+        return new Iterator<>() {
+            private long[] next = from.clone();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public long[] next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                long[] current = next.clone();
+                int i = next.length - 1;
+                while (i >= 0 && next[i] == to[i]) {
+                    next[i] = from[i];
+                    i--;
+                }
+                if (i < 0)
+                    next = null;
+                else
+                    next[i]++;
+                return current;
+            }
+        };
+    }
+
+    // ranges written like "0-500, 0-500", a single number is a range of one value
+    public static Iterator<long[]> ranges(String text) {
+        String[] parts = text.split(",");
+        long[] from = new long[parts.length];
+        long[] to = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            int dash = part.indexOf('-');
+            try {
+                from[i] = Long.parseLong((dash < 0 ? part : part.substring(0, dash)).trim());
+                to[i] = dash < 0 ? from[i] : Long.parseLong(part.substring(dash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid range: " + part);
+            }
+        }
+        return ranges(from, to);
+    }
+
+    // one vector per line, values separated by commas. lines that are not numbers (a header) are skipped
+    public static Iterator<long[]> csv(BufferedReader reader) {
+        return new Iterator<>() {
+            private long[] next = read();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public long[] next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                long[] current = next;
+                next = read();
+                return current;
+            }
+
+            private long[] read() {
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        long[] vector = parseRow(line);
+                        if (vector != null)
+                            return vector;
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    public static String csvHeader(int inputCount) {
+        StringBuilder header = new StringBuilder();
+        for (int i = 1; i <= inputCount; i++)
+            header.append('x').append(i).append(',');
+        return header.append("y,cycles").toString();
+    }
+
+    public static String csvRow(RunResult result) {
+        StringBuilder row = new StringBuilder();
+        for (long input : result.getInputs())
+            row.append(input).append(',');
+        return row.append(result.getResult()).append(',').append(result.getCycles()).toString();
+    }
+
+    private static long[] parseRow(String line) {
+        if (line.isBlank())
+            return null;
+        String[] values = line.split(",");
+        long[] vector = new long[values.length];
+        try {
+            for (int i = 0; i < values.length; i++)
+                vector[i] = Long.parseLong(values[i].trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        for (long value : vector) {
+            if (value < 0)
+                throw new IllegalArgumentException("inputs must not be negative: " + line);
+        }
+        return vector;
+    }
+}
@@ -3,10 +3,10 @@ package semulator.execution;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.label.FixedLabel;
 import semulator.label.Label;
+import semulator.program.ExecutionSession;
 import semulator.program.FunctionExecutor;
 
 import java.util.*;
-import javafx.util.Pair;
 import semulator.variable.VariableImpl;
 
 
@@ -14,7 +14,23 @@ public class ProgramExecutorImpl {
 
     public ProgramExecutorImpl() { }
 
-    public static List<Pair<Integer, TreeMap<VariableImpl, Long>>> run(FunctionExecutor program, List<Long> inputs, List <FunctionExecutor> functions) {
+    public static List<Snapshot> run(FunctionExecutor program, List<Long> inputs, List <FunctionExecutor> functions) {
         return program.run(inputs, functions);
     }
+
+    public static List<Snapshot> run(FunctionExecutor program, List<Long> inputs, List <FunctionExecutor> functions, TraceLevel traceLevel, int sampleRate) {
+        return program.run(inputs, functions, traceLevel, sampleRate);
+    }
+
+    public static ExecutionTrace trace(FunctionExecutor program, List<Long> inputs, List <FunctionExecutor> functions) {
+        return program.trace(inputs, functions);
+    }
+
+    public static ExecutionSession startSession(FunctionExecutor program, List<Long> inputs, List <FunctionExecutor> functions) {
+        return program.startSession(inputs, functions);
+    }
+
+    public static ExecutionSession startReversibleSession(FunctionExecutor program, List<Long> inputs, List <FunctionExecutor> functions) {
+        return program.startReversibleSession(inputs, functions);
+    }
 }
@@ -0,0 +1,34 @@
+package semulator.execution;
+
+import java.util.Arrays;
+
+// the outcome of one run: the inputs it got, y and the cycles it took
+public class RunResult {
+
+    private final long[] inputs;
+    private final long result;
+    private final int cycles;
+
+    public RunResult(long[] inputs, long result, int cycles) {
+        this.inputs = inputs;
+        this.result = result;
+        this.cycles = cycles;
+    }
+
+    public long[] getInputs() {
+        return inputs;
+    }
+
+    public long getResult() {
+        return result;
+    }
+
+    public int getCycles() {
+        return cycles;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(inputs) + " -> y=" + result + " cycles=" + cycles;
+    }
+}
@@ -0,0 +1,25 @@
+package semulator.execution;
+
+import semulator.variable.VariableImpl;
+
+import java.util.TreeMap;
+
+// the state of a run at one step: the op that runs next (-1 once the program is done) and every variable's value
+public class Snapshot {
+
+    private final int pc;
+    private final TreeMap<VariableImpl, Long> variables;
+
+    public Snapshot(int pc, TreeMap<VariableImpl, Long> variables) {
+        this.pc = pc;
+        this.variables = variables;
+    }
+
+    public int getPc() {
+        return pc;
+    }
+
+    public TreeMap<VariableImpl, Long> getVariables() {
+        return variables;
+    }
+}
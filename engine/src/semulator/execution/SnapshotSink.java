@@ -0,0 +1,65 @@
+package semulator.execution;
+
+import semulator.variable.VariableImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+// keeps full variable snapshots of the steps the trace level asks for
+public class SnapshotSink implements TraceSink {
+
+    private final List<VariableImpl> variables;
+    private final int[] slots;
+    private final TraceLevel traceLevel;
+    private final int sampleRate;
+    private final List<Snapshot> steps;
+    private boolean lastRecorded;
+
+    public SnapshotSink(List<VariableImpl> variables, int[] slots, TraceLevel traceLevel, int sampleRate) {
+        if (traceLevel == TraceLevel.SAMPLED && sampleRate < 1)
+            throw new IllegalArgumentException("sample rate must be positive, got " + sampleRate);
+        this.variables = variables;
+        this.slots = slots;
+        this.traceLevel = traceLevel;
+        this.sampleRate = sampleRate;
+        steps = new ArrayList<>();
+    }
+
+    @Override
+    public void start(int pc, ExecutionContext context) {
+        lastRecorded = traceLevel == TraceLevel.FULL || traceLevel == TraceLevel.SAMPLED;
+        if (lastRecorded)
+            record(pc, context);
+    }
+
+    @Override
+    public void step(long step, int pc, int slot, ExecutionContext context) {
+        lastRecorded = traceLevel == TraceLevel.FULL || (traceLevel == TraceLevel.SAMPLED && step % sampleRate == 0);
+        if (lastRecorded)
+            record(pc, context);
+    }
+
+    @Override
+    public void finish(long steps, int pc, ExecutionContext context) {
+        // the final state is part of every trace except NONE
+        if (!lastRecorded && traceLevel != TraceLevel.NONE)
+            record(pc, context);
+    }
+
+    @Override
+    public boolean tracesSteps() {
+        return traceLevel == TraceLevel.FULL || traceLevel == TraceLevel.SAMPLED;
+    }
+
+    public List<Snapshot> getSteps() {
+        return steps;
+    }
+
+    private void record(int pc, ExecutionContext context) {
+        TreeMap<VariableImpl, Long> snap = new TreeMap<>(VariableImpl.BY_NAME);
+        for (int i = 0; i < slots.length; i++)
+            snap.put(variables.get(i), context.get(slots[i]));
+        steps.add(new Snapshot(pc, snap));
+    }
+}
@@ -0,0 +1,7 @@
+package semulator.execution;
+
+// how a TraceWriter lays a run out in its file
+public enum TraceFormat {
+    BINARY, // fixed width big endian records, see TraceWriter
+    CSV     // one line per changed value: step,pc,cycles,variable,value
+}
@@ -0,0 +1,9 @@
+package semulator.execution;
+
+// how much of a run is kept as a list of snapshots
+public enum TraceLevel {
+    NONE,       // nothing, read the result and cycles from the program
+    FINAL,      // only the state the run ended in
+    SAMPLED,    // the initial state, every Nth step and the final state
+    FULL        // every step, what the debugger walks through
+}
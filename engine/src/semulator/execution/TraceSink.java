@@ -0,0 +1,31 @@
+package semulator.execution;
+
+// receives a run as it happens, pc is the op that runs next or -1 once the program is done
+public interface TraceSink {
+
+    // for runs nobody looks at, like the function calls inside a run
+    TraceSink NONE = new TraceSink() {
+        @Override
+        public void start(int pc, ExecutionContext context) { }
+        @Override
+        public void step(long step, int pc, int slot, ExecutionContext context) { }
+        @Override
+        public void finish(long steps, int pc, ExecutionContext context) { }
+        @Override
+        public boolean tracesSteps() {
+            return false;
+        }
+    };
+
+    void start(int pc, ExecutionContext context);
+
+    // an op only ever writes its own variable, slot is that register and its new value is already in the context
+    void step(long step, int pc, int slot, ExecutionContext context);
+
+    void finish(long steps, int pc, ExecutionContext context);
+
+    // a sink that only looks at the start and the end lets the run skip through loops without calling step
+    default boolean tracesSteps() {
+        return true;
+    }
+}
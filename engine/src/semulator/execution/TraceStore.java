@@ -0,0 +1,26 @@
+package semulator.execution;
+
+// where an ExecutionTrace keeps its steps and the checkpoints of the registers
+interface TraceStore {
+
+    void add(int pc, int slot, long value);
+
+    int size();
+
+    int getPc(int step);
+
+    int getSlot(int step);
+
+    long getValue(int step);
+
+    // registers is a copy the store may keep
+    void addCheckpoint(long[] registers);
+
+    // copies checkpoint index into registers
+    void readCheckpoint(int index, long[] registers);
+
+    // forgets every step and checkpoint, a new run starts
+    void clear(int registerCount);
+
+    void close();
+}
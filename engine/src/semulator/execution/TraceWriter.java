@@ -0,0 +1,183 @@
+package semulator.execution;
+
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Streams a run to a file as it happens, for runs too long to keep as snapshots.
+ * Records go into one fixed size buffer that is written to the file whenever it fills up,
+ * so a run of any length takes the same memory and the file is written in large batches.
+ * A binary trace starts with the magic, the version, the variable count and the slot and name of every variable,
+ * then the pc, cycles and value of every variable at the start. Every step is then pc, slot, value and cycles,
+ * 20 bytes, and the end is a record with slot -2 and the step count as its value.
+ * A csv trace starts with a line per variable at step 0, has a line per step with the variable the op wrote
+ * (empty for a jump) and ends with a line whose step is "end".
+ */
+public class TraceWriter implements TraceSink, AutoCloseable {
+
+    public static final int MAGIC = 0x53545243; // STRC
+    public static final int VERSION = 1;
+    public static final int END_SLOT = -2;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int STEP_BYTES = 20;
+    private static final byte[] NO_NAME = new byte[0];
+
+    private final FileChannel channel;
+    private final TraceFormat format;
+    private final int[] variableSlots;
+    private final byte[][] names;
+    private final byte[][] slotNames; // the first variable shown for every slot, what a csv line names
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final byte[] digits = new byte[20];
+
+    public TraceWriter(Path file, TraceFormat format, List<VariableImpl> variables, int[] variableSlots) {
+        this.format = format;
+        this.variableSlots = variableSlots;
+        names = new byte[variables.size()][];
+        int slotCount = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = variables.get(i).getRepresentation().getBytes(StandardCharsets.UTF_8);
+            slotCount = Math.max(slotCount, variableSlots[i] + 1);
+        }
+        slotNames = new byte[slotCount][];
+        for (int i = 0; i < names.length; i++) {
+            if (slotNames[variableSlots[i]] == null)
+                slotNames[variableSlots[i]] = names[i];
+        }
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not open the trace file " + file, e);
+        }
+    }
+
+    @Override
+    public void start(int pc, ExecutionContext context) {
+        if (format == TraceFormat.BINARY) {
+            ensure(12);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(names.length);
+            for (int i = 0; i < names.length; i++) {
+                ensure(6 + names[i].length);
+                buffer.putInt(variableSlots[i]).putShort((short) names[i].length).put(names[i]);
+            }
+            ensure(8);
+            buffer.putInt(pc).putInt(context.getCycles());
+            for (int slot : variableSlots) {
+                ensure(8);
+                buffer.putLong(context.get(slot));
+            }
+        } else {
+            putAscii("step,pc,cycles,variable,value\n");
+            for (int i = 0; i < names.length; i++)
+                putLine(0, pc, context.getCycles(), names[i], context.get(variableSlots[i]), true);
+        }
+    }
+
+    @Override
+    public void step(long step, int pc, int slot, ExecutionContext context) {
+        boolean written = slot != VariableSlots.NO_SLOT;
+        long value = written ? context.get(slot) : 0;
+        if (format == TraceFormat.BINARY) {
+            ensure(STEP_BYTES);
+            buffer.putInt(pc).putInt(slot).putLong(value).putInt(context.getCycles());
+        } else {
+            byte[] name = written && slot < slotNames.length && slotNames[slot] != null ? slotNames[slot] : NO_NAME;
+            putLine(step, pc, context.getCycles(), name, value, written);
+        }
+    }
+
+    @Override
+    public void finish(long steps, int pc, ExecutionContext context) {
+        if (format == TraceFormat.BINARY) {
+            ensure(STEP_BYTES);
+            buffer.putInt(pc).putInt(END_SLOT).putLong(steps).putInt(context.getCycles());
+        } else {
+            putAscii("end,");
+            putNumber(pc);
+            putAscii(",");
+            putNumber(context.getCycles());
+            putAscii(",,\n");
+        }
+        flush();
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("could not close the trace file", e);
+            }
+        }
+    }
+
+    private void putLine(long step, int pc, int cycles, byte[] name, long value, boolean hasValue) {
+        ensure(4 * 20 + 5 + name.length);
+        putNumber(step);
+        buffer.put((byte) ',');
+        putNumber(pc);
+        buffer.put((byte) ',');
+        putNumber(cycles);
+        buffer.put((byte) ',');
+        buffer.put(name);
+        buffer.put((byte) ',');
+        if (hasValue)
+            putNumber(value);
+        buffer.put((byte) '\n');
+    }
+
+    // a number without a String for it, a trace line costs no garbage
+    private void putNumber(long number) {
+        ensure(21);
+        if (number < 0) {
+            buffer.put((byte) '-');
+            number = -number; // values and steps are never Long.MIN_VALUE
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + number % 10);
+            number /= 10;
+        } while (number != 0);
+        while (count > 0)
+            buffer.put(digits[--count]);
+    }
+
+    private void putAscii(String text) {
+        ensure(text.length());
+        for (int i = 0; i < text.length(); i++)
+            buffer.put((byte) text.charAt(i));
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes)
+            flush();
+        if (buffer.remaining() < bytes)
+            throw new IllegalArgumentException("a trace record of " + bytes + " bytes does not fit the buffer");
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not write the trace file", e);
+        } finally {
+            buffer.clear();
+        }
+    }
+}
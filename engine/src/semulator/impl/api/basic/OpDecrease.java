@@ -1,4 +1,5 @@
 package semulator.impl.api.basic;
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.impl.api.skeleton.OpData;
 import semulator.label.FixedLabel;
@@ -6,21 +7,13 @@ import semulator.label.Label;
 import semulator.program.FunctionExecutor;
 import semulator.variable.VariableImpl;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class OpDecrease extends AbstractOpBasic {
 
-    public Label execute(FunctionExecutor program) {
-        Long variableValue = program.getVariableValue(getVariable());
-        variableValue = Math.max(0, variableValue - 1);
-        ArrayList<VariableImpl> vars = new ArrayList<>();
-        ArrayList<Long> vals = new ArrayList<>();
-        vars.add(getVariable());
-        vals.add(variableValue);
-
-        program.addSnap(vars,vals);
-        program.increaseCycleCounter(getCycles());
+    public Label execute(ExecutionContext context) {
+        context.set(getSlot(), Math.max(0, context.get(getSlot()) - 1));
+        context.increaseCycleCounter(getCycles());
 
         return FixedLabel.EMPTY;
     }
@@ -1,4 +1,5 @@
 package semulator.impl.api.basic;
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.impl.api.skeleton.OpData;
 import semulator.label.FixedLabel;
@@ -6,7 +7,6 @@ import semulator.label.Label;
 import semulator.program.FunctionExecutor;
 import semulator.variable.VariableImpl;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class OpIncrease extends AbstractOpBasic {
@@ -26,17 +26,10 @@ public class OpIncrease extends AbstractOpBasic {
     }
 
     @Override
-    public Label execute(FunctionExecutor program) {
+    public Label execute(ExecutionContext context) {
 
-        Long variableValue = program.getVariableValue(getVariable());
-        variableValue++;
-        ArrayList<VariableImpl> vars = new ArrayList<>();
-        ArrayList<Long> vals = new ArrayList<>();
-        vars.add(getVariable());
-        vals.add(variableValue);
-
-        program.addSnap(vars,vals);
-        program.increaseCycleCounter(getCycles());
+        context.set(getSlot(), context.get(getSlot()) + 1);
+        context.increaseCycleCounter(getCycles());
 
         return FixedLabel.EMPTY;
     }
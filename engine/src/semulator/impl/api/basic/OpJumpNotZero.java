@@ -1,4 +1,5 @@
 package semulator.impl.api.basic;
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.impl.api.skeleton.LabelJumper;
 import semulator.impl.api.skeleton.OpData;
@@ -40,12 +41,11 @@ public class OpJumpNotZero extends AbstractOpBasic implements LabelJumper {
     }
 
     @Override
-    public Label execute(FunctionExecutor program) {
-        Long variableValue = program.getVariableValue(getVariable());
-        if (variableValue != 0) {
+    public Label execute(ExecutionContext context) {
+        if (context.get(getSlot()) != 0) {
             return jnzLabel;
         }
-        program.increaseCycleCounter(getCycles());
+        context.increaseCycleCounter(getCycles());
         return FixedLabel.EMPTY;
     }
 
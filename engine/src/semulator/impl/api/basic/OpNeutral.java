@@ -1,5 +1,6 @@
 package semulator.impl.api.basic;
 
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.impl.api.skeleton.OpData;
 import semulator.label.FixedLabel;
@@ -38,8 +39,8 @@ public class OpNeutral extends AbstractOpBasic
     }
 
     @Override
-    public Label execute(FunctionExecutor program) {
-        program.increaseCycleCounter(getCycles());
+    public Label execute(ExecutionContext context) {
+        context.increaseCycleCounter(getCycles());
         return FixedLabel.EMPTY;
     }
 
@@ -1,7 +1,9 @@
 package semulator.impl.api.skeleton;
+import semulator.execution.ExecutionContext;
 import semulator.program.FunctionExecutor;
 import semulator.label.*;
 import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
 
 import java.util.List;
 
@@ -12,6 +14,7 @@ public abstract class AbstractOpBasic  {
     private VariableImpl variable;
     private AbstractOpBasic parent;
     private String uniqId;
+    private int slot = VariableSlots.NO_SLOT; // register of the variable, bound when the program is compiled
 
     private int depth;
 
@@ -73,6 +76,22 @@ public abstract class AbstractOpBasic  {
         return variable;
     }
 
+    public int getSlot() {
+        return slot;
+    }
+
+    // resolve every variable the op touches to its register slot
+    public void bindSlots(VariableSlots slots) {
+        slot = slots.slotOf(variable);
+    }
+
+    // a copy of the op bound to slots. an op may be in more than one program and image, each image binds copies of its own
+    public AbstractOpBasic boundCopy(VariableSlots slots) {
+        AbstractOpBasic copy = myClone();
+        copy.bindSlots(slots);
+        return copy;
+    }
+
     public String getType() {
         return opData.getType().equals(OpType.BASIC)? "B" : "S";
     }
@@ -93,13 +112,24 @@ public abstract class AbstractOpBasic  {
         return opData.getCycles();
     }
 
+    // cycles the op's expansion to degree would take, from the values in context before the op runs.
+    // hidden holds the work variables of that expansion, getHiddenCount of them, and is updated to their values after it
+    public int getExpandedCycles(ExecutionContext context, int degree, long[] hidden) {
+        return getCycles();
+    }
+
+    // work variables of the op's expansion whose values change what a later run of it costs
+    public int getHiddenCount() {
+        return 0;
+    }
+
     public AbstractOpBasic getParent() { return parent;};
 
     public String toString() {
         return getName();
     }
 
-    public abstract Label execute(FunctionExecutor program);
+    public abstract Label execute(ExecutionContext context);
 
     public abstract List<AbstractOpBasic> expand(int extensionLevel, FunctionExecutor program);
 
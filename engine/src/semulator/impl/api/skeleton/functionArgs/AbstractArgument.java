@@ -1,9 +1,11 @@
 package semulator.impl.api.skeleton.functionArgs;
 
 import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 public abstract class AbstractArgument {
     private final ArgumentTypes type;
@@ -16,6 +18,8 @@ public abstract class AbstractArgument {
         return type;
     }
 
+    public abstract void bindSlots(VariableSlots slots);
+
     public enum ArgumentTypes {
         VARIABLE,
         FUNCTION;
@@ -59,6 +63,31 @@ public abstract class AbstractArgument {
 
         return functionArgs;
     }
+    // arguments with every variable in them renamed by rename, the function names stay as they are
+    public static String renameVariables(String arguments, UnaryOperator<VariableImpl> rename) {
+        StringBuilder renamed = new StringBuilder();
+        StringBuilder token = new StringBuilder();
+        char before = ',';
+        for (char c : arguments.toCharArray()) {
+            if (c == '(' || c == ')' || c == ',') {
+                renamed.append(renameToken(token.toString(), before == '(', rename)).append(c);
+                token.setLength(0);
+                before = c;
+            } else {
+                token.append(c);
+            }
+        }
+        return renamed.append(renameToken(token.toString(), before == '(', rename)).toString();
+    }
+
+    // a token right after ( names a function
+    private static String renameToken(String token, boolean functionName, UnaryOperator<VariableImpl> rename) {
+        String name = token.trim();
+        if (functionName || !name.matches("[xyz]\\d+"))
+            return token;
+        return token.replace(name, rename.apply(VariableImpl.of(name)).getRepresentation());
+    }
+
     private static AbstractArgument processPart(StringBuilder current, boolean isFunc)
     {
         AbstractArgument arg;
@@ -68,7 +97,7 @@ public abstract class AbstractArgument {
         if (isFunc)
             arg = new FunctionArgument(cleanStr);
         else
-            arg = new VariableArgument(new VariableImpl(part));
+            arg = new VariableArgument(VariableImpl.of(part));
 
         return arg;
     }
@@ -1,5 +1,7 @@
 package semulator.impl.api.skeleton.functionArgs;
 
+import semulator.variable.VariableSlots;
+
 import java.util.List;
 
 public class FunctionArgument extends AbstractArgument {
@@ -44,6 +46,12 @@ public class FunctionArgument extends AbstractArgument {
         return s; // return unchanged if it doesn't match
     }
 
+    @Override
+    public void bindSlots(VariableSlots slots) {
+        if (functionArguments != null)
+            functionArguments.forEach(arg -> arg.bindSlots(slots));
+    }
+
     public List<AbstractArgument> getArgument() {
         return functionArguments;
     }
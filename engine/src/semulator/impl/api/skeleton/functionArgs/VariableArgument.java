@@ -1,9 +1,11 @@
 package semulator.impl.api.skeleton.functionArgs;
 
 import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
 
 public class VariableArgument extends AbstractArgument {
     private final VariableImpl variable;
+    private int slot = VariableSlots.NO_SLOT;
     public VariableArgument(VariableImpl variable) {
         super(ArgumentTypes.VARIABLE);
         this.variable = variable;
@@ -13,6 +15,15 @@ public class VariableArgument extends AbstractArgument {
         return variable;
     }
 
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public void bindSlots(VariableSlots slots) {
+        slot = slots.slotOf(variable);
+    }
+
       public VariableImpl getArgument() {
         return variable;
     }
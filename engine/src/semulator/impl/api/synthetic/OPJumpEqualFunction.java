@@ -1,13 +1,16 @@
 package semulator.impl.api.synthetic;
 
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.impl.api.skeleton.LabelJumper;
 import semulator.impl.api.skeleton.OpData;
 import semulator.label.FixedLabel;
 import semulator.label.Label;
+import semulator.program.CycleModel;
 import semulator.program.FunctionExecutor;
 import semulator.program.FunctionExecutorImpl;
 import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
 
 import java.util.List;
 
@@ -42,15 +45,31 @@ public class OPJumpEqualFunction extends OpFunctionBase implements LabelJumper {
     }
 
     @Override
-    public Label execute(FunctionExecutor program) { // not supported for this OP
+    public Label execute(ExecutionContext context) { // not supported for this OP
 
         return FixedLabel.EMPTY;
     }
 
     @Override
-    public Label execute(FunctionExecutor program, List <FunctionExecutor> functions) {
-        Long result = ((FunctionExecutorImpl)function).run(program, functionArguments, functions);
-        if (program.getVariableValue(getVariable()).equals(result))
+    public Label execute(ExecutionContext context, List <FunctionExecutor> functions, FunctionExecutor callee) {
+        long result = ((FunctionExecutorImpl)callee).run(context, functionArguments, functions);
+        context.increaseCycleCounter(getCycles());
+        if (context.get(getSlot()) == result)
+            return JEFunctionLabel;
+
+        return FixedLabel.EMPTY;
+    }
+
+    @Override
+    public Label execute(ExecutionContext context, List <FunctionExecutor> functions, FunctionExecutor callee, CycleModel site) {
+        if (site.getDegree() == 0)
+            return execute(context, functions, callee);
+
+        long result = ((FunctionExecutorImpl)callee).runExpanded(context, functionArguments, functions, site);
+        // the expansion ends by comparing the result with a jump equal variable
+        context.increaseCycleCounter(OpJumpEqualVariable.expandedCycles(site.getDegree() - 1,
+                context.get(getSlot()), result, site.hidden(CycleModel.CALL_RESULT, 2)));
+        if (context.get(getSlot()) == result)
             return JEFunctionLabel;
 
         return FixedLabel.EMPTY;
@@ -71,6 +90,15 @@ public class OPJumpEqualFunction extends OpFunctionBase implements LabelJumper {
          return new OPJumpEqualFunction(this);
     }
 
+    // the copy calls the same function, an image runs the function it resolved anyway
+    @Override
+    public AbstractOpBasic boundCopy(VariableSlots slots) {
+        AbstractOpBasic copy = new OPJumpEqualFunction(getVariable(), getLabel(), getFunctionName(), getStrFunctionArguments(),
+                JEFunctionLabel, function);
+        copy.bindSlots(slots);
+        return copy;
+    }
+
     @Override
     public String getRepresentation() {
         return String.format("if %s = %s GOTO %s", getVariable().getRepresentation(), ((FunctionExecutorImpl)function).getUserString(), JEFunctionLabel.getLabelRepresentation());
@@ -1,14 +1,16 @@
 package semulator.impl.api.synthetic;
 
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.impl.api.skeleton.OpData;
 import semulator.label.FixedLabel;
 import semulator.label.Label;
 import semulator.program.FunctionExecutorImpl;
+import semulator.program.CycleModel;
 import semulator.program.FunctionExecutor;
 import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class OPQuote extends OpFunctionBase {
@@ -37,22 +39,30 @@ public class OPQuote extends OpFunctionBase {
     }
 
     @Override
-    public Label execute(FunctionExecutor program) { // not supported for this OP
+    public Label execute(ExecutionContext context) { // not supported for this OP
         return FixedLabel.EMPTY;
     }
 
     @Override
-    public Label execute(FunctionExecutor program, List <FunctionExecutor> functions) {
+    public Label execute(ExecutionContext context, List <FunctionExecutor> functions, FunctionExecutor callee) {
 
-        ((FunctionExecutorImpl)function).run(program, functionArguments, functions);
-        Long result = function.getVariableValue(VariableImpl.RESULT);
-        ArrayList<VariableImpl> vars = new ArrayList<>();
-        ArrayList<Long> vals = new ArrayList<>();
-        vars.add(getVariable());
-        vals.add(result);
+        long result = ((FunctionExecutorImpl)callee).run(context, functionArguments, functions);
+        context.set(getSlot(), result);
+        context.increaseCycleCounter(getCycles());
 
-        program.addSnap(vars,vals);
-        program.increaseCycleCounter(getCycles());
+        return FixedLabel.EMPTY;
+    }
+
+    @Override
+    public Label execute(ExecutionContext context, List <FunctionExecutor> functions, FunctionExecutor callee, CycleModel site) {
+        if (site.getDegree() == 0)
+            return execute(context, functions, callee);
+
+        long target = context.get(getSlot());
+        long result = ((FunctionExecutorImpl)callee).runExpanded(context, functionArguments, functions, site);
+        context.set(getSlot(), result);
+        // the expansion ends by assigning the result
+        context.increaseCycleCounter(OpAssignment.expandedCycles(site.getDegree() - 1, target, result));
 
         return FixedLabel.EMPTY;
     }
@@ -72,6 +82,14 @@ public class OPQuote extends OpFunctionBase {
         return new OPQuote(this);
     }
 
+    // the copy calls the same function, an image runs the function it resolved anyway
+    @Override
+    public AbstractOpBasic boundCopy(VariableSlots slots) {
+        AbstractOpBasic copy = new OPQuote(getVariable(), getLabel(), getFunctionName(), getStrFunctionArguments(), function);
+        copy.bindSlots(slots);
+        return copy;
+    }
+
     @Override
     public String getRepresentation() {
         return String.format("%s ← %s", getVariable().getRepresentation(), ((FunctionExecutorImpl)function).getUserString());
@@ -4,17 +4,20 @@ import semulator.impl.api.basic.OpDecrease;
 import semulator.impl.api.basic.OpIncrease;
 import semulator.impl.api.basic.OpJumpNotZero;
 import semulator.impl.api.basic.OpNeutral;
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.*;
 import semulator.label.FixedLabel;
 import semulator.label.Label;
 import semulator.program.FunctionExecutor;
 import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class OpAssignment extends AbstractOpBasic implements VariableUser  {
     VariableImpl outSideVar;
+    private int outSideSlot = VariableSlots.NO_SLOT;
     public OpAssignment( VariableImpl variable, VariableImpl outSideVar) {
         super(OpData.ASSIGNMENT, variable);
         this.outSideVar = outSideVar;
@@ -38,18 +41,39 @@ public class OpAssignment extends AbstractOpBasic implements VariableUser  {
         generateUniqId();
     }
 
+    // expanded: zero v, then at 0 a JNZ that falls through and a GOTO to the end.
+    // otherwise source rounds of pouring v' into z1 and source rounds of pouring z1 into v and v', each loop ends with one JNZ that falls through
+    public static int expandedCycles(int degree, long target, long source) {
+        if (degree == 0)
+            return OpData.ASSIGNMENT.getCycles();
+        long cycles = OpZeroVariable.expandedCycles(degree - 1, target);
+        if (source == 0)
+            return (int) (cycles + OpData.JUMP_NOT_ZERO.getCycles() + OpGoToLabel.expandedCycles(degree - 1));
+        cycles += source * (OpData.DECREASE.getCycles() + OpData.INCREASE.getCycles()) + OpData.JUMP_NOT_ZERO.getCycles();
+        cycles += source * (OpData.DECREASE.getCycles() + 2 * OpData.INCREASE.getCycles()) + OpData.JUMP_NOT_ZERO.getCycles();
+        return (int) cycles;
+    }
+
+    @Override
+    public int getExpandedCycles(ExecutionContext context, int degree, long[] hidden) {
+        // v ← v zeroes v' before it is read
+        long source = outSideSlot == getSlot() ? 0 : context.get(outSideSlot);
+        return expandedCycles(degree, context.get(getSlot()), source);
+    }
+
     @Override
-    public Label execute(FunctionExecutor program) {
-        Long variableValue = program.getVariableValue(outSideVar);
-        ArrayList<VariableImpl> vars = new ArrayList<>();
-        ArrayList<Long> vals = new ArrayList<>();
-        vars.add(getVariable());
-        vals.add(variableValue);
-        program.addSnap(vars,vals);
-        program.increaseCycleCounter(getCycles());
+    public Label execute(ExecutionContext context) {
+        context.set(getSlot(), context.get(outSideSlot));
+        context.increaseCycleCounter(getCycles());
 
         return FixedLabel.EMPTY;
     }
+
+    @Override
+    public void bindSlots(VariableSlots slots) {
+        super.bindSlots(slots);
+        outSideSlot = slots.slotOf(outSideVar);
+    }
     //implementation of deep clone
     @Override
     public AbstractOpBasic myClone() {
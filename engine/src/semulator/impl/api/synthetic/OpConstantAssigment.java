@@ -3,6 +3,7 @@ import semulator.impl.api.basic.OpDecrease;
 import semulator.impl.api.basic.OpIncrease;
 import semulator.impl.api.basic.OpJumpNotZero;
 import semulator.impl.api.basic.OpNeutral;
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.impl.api.skeleton.OpData;
 import semulator.label.FixedLabel;
@@ -38,14 +39,27 @@ public class OpConstantAssigment extends AbstractOpBasic  {
         generateUniqId();
     }
 
+    // expanded: zero v, INC z1 constant times, a JZ on z1 and constant rounds of pouring z1 into v that end with a JNZ that falls through
+    public static int expandedCycles(int degree, long target, long constant) {
+        if (degree == 0)
+            return OpData.CONSTANT_ASSIGNMENT.getCycles();
+        long cycles = OpZeroVariable.expandedCycles(degree - 1, target)
+                + constant * OpData.INCREASE.getCycles()
+                + OpJumpZero.expandedCycles(degree - 1, constant);
+        if (constant != 0)
+            cycles += constant * (OpData.DECREASE.getCycles() + OpData.INCREASE.getCycles()) + OpData.JUMP_NOT_ZERO.getCycles();
+        return (int) cycles;
+    }
+
+    @Override
+    public int getExpandedCycles(ExecutionContext context, int degree, long[] hidden) {
+        return expandedCycles(degree, context.get(getSlot()), constant);
+    }
+
     @Override
-    public Label execute(FunctionExecutor program) {
-        ArrayList<VariableImpl> vars = new ArrayList<>();
-        ArrayList<Long> vals = new ArrayList<>();
-        vars.add(getVariable());
-        vals.add(constant);
-        program.addSnap(vars,vals);
-        program.increaseCycleCounter(getCycles());
+    public Label execute(ExecutionContext context) {
+        context.set(getSlot(), constant);
+        context.increaseCycleCounter(getCycles());
 
         return FixedLabel.EMPTY;
     }
@@ -1,9 +1,7 @@
 package semulator.impl.api.synthetic;
 
-import gui.MainApp;
-import gui.MainController;
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
-import semulator.impl.api.skeleton.LabelJumper;
 import semulator.impl.api.skeleton.OpData;
 import semulator.impl.api.basic.OpNeutral;
 import semulator.impl.api.skeleton.functionArgs.AbstractArgument;
@@ -12,9 +10,11 @@ import semulator.impl.api.skeleton.functionArgs.VariableArgument;
 import semulator.label.FixedLabel;
 
 import semulator.label.Label;
+import semulator.program.CycleModel;
 import semulator.program.FunctionExecutor;
-import semulator.program.SprogramImpl;
+import semulator.program.FunctionTemplate;
 import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
 
 import semulator.variable.VariableType;
 
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 
 public abstract  class OpFunctionBase extends AbstractOpBasic {
 
@@ -53,14 +54,13 @@ public abstract  class OpFunctionBase extends AbstractOpBasic {
         }
         List<AbstractArgument> args;
         FunctionExecutor subFunction;
-        MainController controller = MainApp.getMainController();
         AtomicInteger maxDegree = new AtomicInteger();
 
         if (arg.getType().equals(AbstractArgument.ArgumentTypes.VARIABLE)) {
             return function.getProgramDegree() + 1;
         } else {
 
-            subFunction = controller.getMainProgram().getFunction(((FunctionArgument) arg).getFunctionName());
+            subFunction = function.getFunction(((FunctionArgument) arg).getFunctionName());
             args = ((FunctionArgument) arg).getArgument();
             if (args == null) {
                 return subFunction.getProgramDegree() + 1;
@@ -102,6 +102,32 @@ public abstract  class OpFunctionBase extends AbstractOpBasic {
         return strFunctionArguments;
     }
 
+    // renames the variables the arguments name, for a copy of the op inlined where its variables are others
+    public void renameArguments(UnaryOperator<VariableImpl> rename) {
+        if (functionArguments == null)
+            return;
+        strFunctionArguments = AbstractArgument.renameVariables(strFunctionArguments, rename);
+        functionArguments = AbstractArgument.parseFunctionArguments(strFunctionArguments);
+    }
+
+    // the variables the arguments name, those of function arguments included
+    public List<VariableImpl> getArgumentVariables() {
+        List<VariableImpl> found = new ArrayList<>();
+        addArgumentVariables(functionArguments, found);
+        return found;
+    }
+
+    private static void addArgumentVariables(List<AbstractArgument> args, List<VariableImpl> found) {
+        if (args == null)
+            return;
+        for (AbstractArgument arg : args) {
+            if (arg.getType().equals(AbstractArgument.ArgumentTypes.VARIABLE))
+                found.add(((VariableArgument) arg).getVariable());
+            else
+                addArgumentVariables(((FunctionArgument) arg).getArgument(), found);
+        }
+    }
+
     public FunctionExecutor getFunction() {
         return function;
     }
@@ -116,21 +142,38 @@ public abstract  class OpFunctionBase extends AbstractOpBasic {
     }
 
     @Override
-    public abstract Label execute(FunctionExecutor program);
+    public abstract Label execute(ExecutionContext context);
+
+    public Label execute(ExecutionContext context, List <FunctionExecutor> functions) {
+        return execute(context, functions, function);
+    }
 
-    public abstract Label execute(FunctionExecutor program, List <FunctionExecutor> functions);
+    // runs the op calling callee, a ProgramImage passes the function the op had when the image was built
+    public abstract Label execute(ExecutionContext context, List <FunctionExecutor> functions, FunctionExecutor callee);
+
+    // runs the op like execute, but charges the cycles its expansion to the degree of site would take
+    public abstract Label execute(ExecutionContext context, List <FunctionExecutor> functions, FunctionExecutor callee, CycleModel site);
+
+    @Override
+    public void bindSlots(VariableSlots slots) {
+        super.bindSlots(slots);
+        if (functionArguments != null)
+            functionArguments.forEach(arg -> arg.bindSlots(slots));
+    }
 
     protected abstract AbstractOpBasic getFinalOp(VariableImpl resultVar, AbstractOpBasic parent);
 
     private List<AbstractOpBasic> expanding(int expansionLevel, FunctionExecutor program)
     {
         VariableImpl resultVar = program.newWorkVar();
-        List<AbstractOpBasic> ops = new ArrayList<>(expandFunction(function, resultVar, this));
+        FunctionTemplate template = function.getTemplate();
+        List<AbstractOpBasic> ops = new ArrayList<>(expandFunction(program, template, resultVar, this));
+        int bodyStart = ops.size() - template.size();
 
         AbstractOpBasic finalOp = getFinalOp(resultVar, this);
         ops.add(finalOp);
 
-        reAssignLabels(ops, program);
+        template.relabel(ops, bodyStart, program);
 
         return ops;
     }
@@ -148,68 +191,6 @@ public abstract  class OpFunctionBase extends AbstractOpBasic {
         }
     }
 
-    protected void reAssignLabels(List<AbstractOpBasic> ops, FunctionExecutor func)
-    {
-        Map<Label, Label> labelMapOldNew = new HashMap<>();
-        boolean containsExit = false;
-        Label currentLabel;
-        Label ExitLabel = null;
-
-        MainController controller = MainApp.getMainController();
-        SprogramImpl mainProgram = (SprogramImpl) controller.getMainProgram();
-
-        for (AbstractOpBasic op: ops) {
-            currentLabel = op.getLabel();
-            if(currentLabel != null && !currentLabel.equals(FixedLabel.EMPTY) && !currentLabel.equals(FixedLabel.EXIT) )
-            {
-                if(labelMapOldNew.containsKey(currentLabel)) {
-                    op.setLabel(labelMapOldNew.get(currentLabel));
-                    func.addLabel(labelMapOldNew.get(currentLabel), op);
-                }
-                else {
-                    Label newLabel = mainProgram.newUniqueLabel();
-                    labelMapOldNew.put(op.getLabel(), newLabel);
-                    op.setLabel(newLabel);
-                    func.addLabel(newLabel, op);
-                }
-            }
-            // if there is an exit label in the function, we need to remap it to a new unique label and assign it to the last op
-            if(currentLabel != null && currentLabel.equals(FixedLabel.EXIT)) {
-                containsExit = true;
-                ExitLabel = mainProgram.newUniqueLabel();
-                op.setLabel(ExitLabel);
-            }
-            if(op instanceof LabelJumper)
-            {
-                Label targetLabel = ((LabelJumper) op).getJumpLabel(); //useless casting but java is stupid
-                Label newLabel;
-                if(labelMapOldNew.containsKey(targetLabel))
-                    newLabel = labelMapOldNew.get(targetLabel);
-                else if (targetLabel.equals(FixedLabel.EXIT)) {
-                    if (!op.equals(ops.getLast())) {
-                        containsExit = true;
-                        if (ExitLabel == null)
-                            ExitLabel = mainProgram.newUniqueLabel();
-                        newLabel = ExitLabel;
-                    }
-                    else {
-                        newLabel = targetLabel;
-                    }
-                }
-                else {
-                    newLabel = mainProgram.newUniqueLabel();
-                    labelMapOldNew.put(targetLabel, newLabel);
-                }
-
-                ((LabelJumper) op).setJumpLabel(newLabel); //again useless casting
-            }
-        }
-        if(containsExit) {
-            ops.getLast().setLabel(ExitLabel); //the last op is always constant assignment to result from y
-            func.addLabel(ExitLabel, ops.getLast());
-        }
-    }
-
     @Override
     public abstract List<AbstractOpBasic> expand(int ignoredExtensionLevel, FunctionExecutor ignoredProgram, VariableImpl Papa);
 
@@ -232,72 +213,52 @@ public abstract  class OpFunctionBase extends AbstractOpBasic {
     @Override
     public abstract String getRepresentation();
 
-    protected List<AbstractOpBasic> expandFunction(FunctionExecutor func, VariableImpl resultVar, AbstractOpBasic parent)
+    // the anchor, the arguments and the body of function inlined with the variables of func, the labels still the function's
+    protected List<AbstractOpBasic> expandFunction(FunctionExecutor func, FunctionTemplate template, VariableImpl resultVar, AbstractOpBasic parent)
     {
         List<AbstractOpBasic> ops = new ArrayList<>();
-        Map<VariableImpl,VariableImpl> vars = new HashMap<>();
+        VariableImpl[] bindings = template.newBindings();
         AbstractOpBasic initOp = new OpNeutral(getVariable(), getLabel(), parent); //anchor
         ops.add(initOp);
         VariableImpl workVar;
 
-        FunctionExecutor functionClone = function.myClone();
-
         if(getLabel() != null && !getLabel().equals(FixedLabel.EMPTY))
             func.addLabel(getLabel(), initOp);
 
         VariableImpl funcVar;
 
-        MainController controller = MainApp.getMainController();
-        SprogramImpl mainProgram = (SprogramImpl) controller.getMainProgram();
-
 
         if (functionArguments != null) {
              int idx = 0;
 
             for (AbstractArgument arg : functionArguments) {
-                funcVar = functionClone.getNextVar(idx++);
+                funcVar = template.getInput(idx++);
                 if (arg.getType().equals(AbstractArgument.ArgumentTypes.VARIABLE)) {
                     VariableArgument variableArgument = (VariableArgument) arg;
-                    //   VariableImpl funcVar = variableArgument.getVariable();
                     if (funcVar.getType().equals(VariableType.RESULT))
                         workVar = resultVar;
                     else
-                        workVar = mainProgram.newWorkVar();
+                        workVar = func.newWorkVar();
                     if (funcVar.getType().equals(VariableType.INPUT)) {
-                        AbstractOpBasic assigment = new OpAssignment(workVar, funcVar, parent);
+                        // the input gets the caller's variable the argument names, not the caller's variable of the input's name
+                        AbstractOpBasic assigment = new OpAssignment(workVar, variableArgument.getVariable(), parent);
                         ops.add(assigment);
                     }
                 } else {
                     FunctionArgument funcArgument = (FunctionArgument) arg;
-                    workVar = mainProgram.newWorkVar();
-                    AbstractOpBasic opQuote = new OPQuote(workVar, funcArgument.getFunctionName(), funcArgument.getStrArguments(), mainProgram.getFunction(funcArgument.getFunctionName()), parent);
+                    workVar = func.newWorkVar();
+                    AbstractOpBasic opQuote = new OPQuote(workVar, funcArgument.getFunctionName(), funcArgument.getStrArguments(), func.getFunction(funcArgument.getFunctionName()), parent);
                     ops.add(opQuote);
                 }
-                vars.put(funcVar, workVar); // change key to val in function
+                template.bind(bindings, funcVar, workVar);
             }
         } else {
-            vars.put(VariableImpl.RESULT, resultVar);
+            template.bind(bindings, VariableImpl.RESULT, resultVar);
         }
 
-        for (VariableImpl var: functionClone.getAllVars()) {
-            if (!vars.containsKey(var)) {
-                if (var.getType().equals(VariableType.RESULT))
-                    workVar = resultVar;
-                else
-                    workVar = mainProgram.newWorkVar();
-
-                vars.put(var, workVar);
-            }
-        }
-
-        functionClone.changeInputVar(vars);
-
-        functionClone.getOps().forEach( op ->{
-            op.setParent(parent);
-            ops.add(op);
-        });
-        function = functionClone;
-        historyFunctions.add(functionClone);
+        template.bindRest(bindings, resultVar, func);
+        ops.addAll(template.instantiate(bindings, parent));
+        historyFunctions.add(function); // the function is never changed, collapse goes back to it all the same
         return ops;
     }
 
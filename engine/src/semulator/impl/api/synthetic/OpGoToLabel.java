@@ -1,6 +1,7 @@
 package semulator.impl.api.synthetic;
 import semulator.impl.api.basic.OpIncrease;
 import semulator.impl.api.basic.OpJumpNotZero;
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 
 import semulator.impl.api.skeleton.LabelJumper;
@@ -39,9 +40,19 @@ public class OpGoToLabel extends AbstractOpBasic implements LabelJumper {
         generateUniqId();
     }
 
+    // expanded: INC z and a JNZ on z that always jumps, a jump that is taken costs nothing
+    public static int expandedCycles(int degree) {
+        return degree == 0 ? OpData.GOTO_LABEL.getCycles() : OpData.INCREASE.getCycles();
+    }
+
+    @Override
+    public int getExpandedCycles(ExecutionContext context, int degree, long[] hidden) {
+        return expandedCycles(degree);
+    }
+
     @Override
-    public Label execute(FunctionExecutor program) {
-        program.increaseCycleCounter(getCycles());
+    public Label execute(ExecutionContext context) {
+        context.increaseCycleCounter(getCycles());
         return nextLabel;
     }
     //implementation of deep clone
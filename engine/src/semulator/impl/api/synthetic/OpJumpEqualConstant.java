@@ -3,6 +3,7 @@ package semulator.impl.api.synthetic;
 import semulator.impl.api.basic.OpDecrease;
 import semulator.impl.api.basic.OpJumpNotZero;
 import semulator.impl.api.basic.OpNeutral;
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.impl.api.skeleton.LabelJumper;
 import semulator.impl.api.skeleton.OpData;
@@ -44,10 +45,36 @@ public class OpJumpEqualConstant extends AbstractOpBasic implements LabelJumper
         generateUniqId();
     }
 
+    // expanded: z1 ← v, then a JZ on z1 and a DEC of it for every step of the constant. hidden[0] is z1,
+    // which keeps what is left of v above the constant until the op runs again
     @Override
-    public Label execute(FunctionExecutor program) {
-        program.increaseCycleCounter(getCycles());
-        return program.getVariableValue(getVariable()).equals(constant) ? jEConstantLabel : FixedLabel.EMPTY;
+    public int getExpandedCycles(ExecutionContext context, int degree, long[] hidden) {
+        if (degree == 0)
+            return getCycles();
+        long value = context.get(getSlot());
+        long cycles = OpAssignment.expandedCycles(degree - 1, hidden[0], value);
+        cycles += Math.min(value, constant) * (OpJumpZero.expandedCycles(degree - 1, 1) + OpData.DECREASE.getCycles());
+        if (value < constant) { // a JZ finds z1 empty and jumps to not equal
+            cycles += OpJumpZero.expandedCycles(degree - 1, 0);
+            hidden[0] = 0;
+        } else if (value > constant) { // the JNZ jumps to not equal
+            hidden[0] = value - constant;
+        } else {
+            cycles += OpData.JUMP_NOT_ZERO.getCycles() + OpGoToLabel.expandedCycles(degree - 1);
+            hidden[0] = 0;
+        }
+        return (int) cycles;
+    }
+
+    @Override
+    public int getHiddenCount() {
+        return 1;
+    }
+
+    @Override
+    public Label execute(ExecutionContext context) {
+        context.increaseCycleCounter(getCycles());
+        return context.get(getSlot()) == constant ? jEConstantLabel : FixedLabel.EMPTY;
     }
     //implementation of deep clone
     @Override
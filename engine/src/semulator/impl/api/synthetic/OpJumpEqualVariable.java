@@ -2,6 +2,7 @@ package semulator.impl.api.synthetic;
 
 import semulator.impl.api.basic.OpDecrease;
 import semulator.impl.api.basic.OpNeutral;
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.impl.api.skeleton.LabelJumper;
 import semulator.impl.api.skeleton.OpData;
@@ -10,6 +11,7 @@ import semulator.label.FixedLabel;
 import semulator.label.Label;
 import semulator.program.FunctionExecutor;
 import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -17,6 +19,7 @@ import java.util.List;
 public class OpJumpEqualVariable extends AbstractOpBasic implements LabelJumper, VariableUser {
 
     VariableImpl comparableVariable;
+    private int comparableSlot = VariableSlots.NO_SLOT;
     Label jEConstantLabel;
 
     public OpJumpEqualVariable(VariableImpl variable, Label jEConstantLabel, VariableImpl comparableVariable) {
@@ -47,10 +50,48 @@ public class OpJumpEqualVariable extends AbstractOpBasic implements LabelJumper,
     }
 
 
+    // expanded: z1 ← a, z2 ← b, then both go down together until one of them is 0. hidden holds z1 and z2,
+    // which keep what is left of the bigger one until the op runs again
+    public static int expandedCycles(int degree, long a, long b, long[] hidden) {
+        if (degree == 0)
+            return OpData.JUMP_EQUAL_VARIABLE.getCycles();
+        long cycles = OpAssignment.expandedCycles(degree - 1, hidden[0], a)
+                + OpAssignment.expandedCycles(degree - 1, hidden[1], b);
+        int notZero = OpJumpZero.expandedCycles(degree - 1, 1);
+        int zero = OpJumpZero.expandedCycles(degree - 1, 0);
+        cycles += Math.min(a, b) * (2 * notZero + 2 * OpData.DECREASE.getCycles() + OpGoToLabel.expandedCycles(degree - 1));
+        if (a <= b) { // z1 ran out, the JZ on what is left of z2 decides
+            cycles += zero + OpJumpZero.expandedCycles(degree - 1, b - a);
+            hidden[0] = 0;
+            hidden[1] = b - a;
+        } else {
+            cycles += notZero + zero;
+            hidden[0] = a - b;
+            hidden[1] = 0;
+        }
+        return (int) cycles;
+    }
+
+    @Override
+    public int getExpandedCycles(ExecutionContext context, int degree, long[] hidden) {
+        return expandedCycles(degree, context.get(getSlot()), context.get(comparableSlot), hidden);
+    }
+
+    @Override
+    public int getHiddenCount() {
+        return 2;
+    }
+
+    @Override
+    public Label execute(ExecutionContext context) {
+        context.increaseCycleCounter(getCycles());
+        return context.get(getSlot()) == context.get(comparableSlot) ? jEConstantLabel : FixedLabel.EMPTY;
+    }
+
     @Override
-    public Label execute(FunctionExecutor program) {
-        program.increaseCycleCounter(getCycles());
-        return program.getVariableValue(getVariable()).equals(program.getVariableValue(comparableVariable)) ? jEConstantLabel : FixedLabel.EMPTY;
+    public void bindSlots(VariableSlots slots) {
+        super.bindSlots(slots);
+        comparableSlot = slots.slotOf(comparableVariable);
     }
 
     //implementation of deep clone
@@ -67,11 +108,6 @@ public class OpJumpEqualVariable extends AbstractOpBasic implements LabelJumper,
     @Override
     public List<AbstractOpBasic> expand(int extensionLevel, FunctionExecutor program, VariableImpl Papa) {
         List<AbstractOpBasic> ops = new ArrayList<>();
-        Label lStart    = program.newUniqueLabel();
-        Label lCheckZ2  = program.newUniqueLabel();
-        Label lNotEqual = program.newUniqueLabel();
-        VariableImpl z1 = program.newWorkVar();
-        VariableImpl z2 = program.newWorkVar();
         Label targetLabel = jEConstantLabel;
         VariableImpl v    = this.getVariable();
         VariableImpl vTag = this.comparableVariable;
@@ -80,6 +116,11 @@ public class OpJumpEqualVariable extends AbstractOpBasic implements LabelJumper,
                 return List.of(this);
             }
             case 1: {
+                Label lStart    = program.newUniqueLabel();
+                Label lCheckZ2  = program.newUniqueLabel();
+                Label lNotEqual = program.newUniqueLabel();
+                VariableImpl z1 = program.newWorkVar();
+                VariableImpl z2 = program.newWorkVar();
                 AbstractOpBasic a1 = new OpAssignment(z1, getLabel(), v,this);
                 if (getLabel() != null && !getLabel().equals(FixedLabel.EMPTY)) {
                     program.addLabel(getLabel(), a1);
@@ -121,6 +162,11 @@ public class OpJumpEqualVariable extends AbstractOpBasic implements LabelJumper,
             }
 
             default: {
+                Label lStart    = program.newUniqueLabel();
+                Label lCheckZ2  = program.newUniqueLabel();
+                Label lNotEqual = program.newUniqueLabel();
+                VariableImpl z1 = program.newWorkVar();
+                VariableImpl z2 = program.newWorkVar();
                 AbstractOpBasic a1 = new OpAssignment(z1, getLabel(), v,this);
                 if (getLabel() != null && !getLabel().equals(FixedLabel.EMPTY)) {
                     program.addLabel(getLabel(), a1);
@@ -2,6 +2,7 @@ package semulator.impl.api.synthetic;
 
 import semulator.impl.api.basic.OpJumpNotZero;
 import semulator.impl.api.basic.OpNeutral;
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.impl.api.skeleton.LabelJumper;
 import semulator.impl.api.skeleton.OpData;
@@ -38,10 +39,22 @@ public class OpJumpZero extends AbstractOpBasic implements LabelJumper {
         generateUniqId();
     }
 
+    // expanded: a JNZ over a GOTO to the target. a jump that is taken and the anchor cost nothing
+    public static int expandedCycles(int degree, long value) {
+        if (degree == 0)
+            return OpData.JUMP_ZERO.getCycles();
+        return value == 0 ? OpData.JUMP_NOT_ZERO.getCycles() + OpGoToLabel.expandedCycles(degree - 1) : 0;
+    }
+
+    @Override
+    public int getExpandedCycles(ExecutionContext context, int degree, long[] hidden) {
+        return expandedCycles(degree, context.get(getSlot()));
+    }
+
     @Override
-    public Label execute(FunctionExecutor program) {
-        program.increaseCycleCounter(getCycles());
-        return program.getVariableValue(getVariable()) == 0L ? jZLabel : FixedLabel.EMPTY;
+    public Label execute(ExecutionContext context) {
+        context.increaseCycleCounter(getCycles());
+        return context.get(getSlot()) == 0L ? jZLabel : FixedLabel.EMPTY;
     }
     //implementation of deep clone
     @Override
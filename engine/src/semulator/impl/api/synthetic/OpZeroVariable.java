@@ -4,6 +4,7 @@ import semulator.impl.api.basic.OpDecrease;
 import semulator.impl.api.basic.OpIncrease;
 import semulator.impl.api.basic.OpJumpNotZero;
 import semulator.impl.api.basic.OpNeutral;
+import semulator.execution.ExecutionContext;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.impl.api.skeleton.OpData;
 import semulator.label.FixedLabel;
@@ -32,15 +33,25 @@ public class OpZeroVariable extends AbstractOpBasic  {
         generateUniqId();
     }
 
+    // expanded: at 0 the JNZ falls through, INC z and jump to the end. otherwise value rounds of DEC and a JNZ that falls through once
+    public static int expandedCycles(int degree, long value) {
+        if (degree == 0)
+            return OpData.ZERO_VARIABLE.getCycles();
+        if (value == 0)
+            return OpData.JUMP_NOT_ZERO.getCycles() + OpData.INCREASE.getCycles();
+        return (int) (value * OpData.DECREASE.getCycles() + OpData.JUMP_NOT_ZERO.getCycles());
+    }
+
+    @Override
+    public int getExpandedCycles(ExecutionContext context, int degree, long[] hidden) {
+        return expandedCycles(degree, context.get(getSlot()));
+    }
+
     @Override
-    public Label execute(FunctionExecutor program)
+    public Label execute(ExecutionContext context)
     {
-        ArrayList<VariableImpl> vars = new ArrayList<>();
-        ArrayList<Long> vals = new ArrayList<>();
-        vars.add(getVariable());
-        vals.add(0L);
-        program.addSnap(vars,vals);
-        program.increaseCycleCounter(getCycles());
+        context.set(getSlot(), 0L);
+        context.increaseCycleCounter(getCycles());
         return FixedLabel.EMPTY;
     }
     //implementation of deep clone
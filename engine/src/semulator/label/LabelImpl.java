@@ -1,16 +1,65 @@
 package semulator.label;
 
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * A label by name. There is one instance of every name, the of methods return it, so labels compare by identity
+ * and hash with a hash worked out once. Every label also gets a dense id, in the order labels are first asked for.
+ */
 public class LabelImpl implements Label {
+
+    private static final ConcurrentHashMap<String, LabelImpl> interned = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, LabelImpl> numbered = new ConcurrentHashMap<>(); // Ln by n
+    private static final AtomicInteger nextId = new AtomicInteger();
+
     private final String label;
+    private final int number; // n of a label Ln, -1 for any other name
+    private final int id;
+    private final int hash;
 
-    public LabelImpl(int number) {
-        this.label = "L" + number;
-    }
-    public LabelImpl(String label) {
+    private LabelImpl(String label, int id) {
         this.label = label;
+        this.number = numberOf(label);
+        this.id = id;
+        hash = Objects.hash(label); // what it always was, hash sets of labels keep their order
+    }
+
+    public static LabelImpl of(int number) {
+        LabelImpl label = numbered.get(number);
+        if (label != null)
+            return label;
+        return numbered.computeIfAbsent(number, ignored -> of("L" + number));
+    }
+
+    public static LabelImpl of(String label) {
+        LabelImpl interned = LabelImpl.interned.get(label);
+        if (interned != null)
+            return interned;
+        return LabelImpl.interned.computeIfAbsent(label, name -> new LabelImpl(name, nextId.getAndIncrement()));
     }
+
+    private static int numberOf(String label) {
+        if (label.length() < 2 || label.length() > 10 || label.charAt(0) != 'L')
+            return -1;
+        if (label.charAt(1) == '0' && label.length() > 2) // L05 is not L5
+            return -1;
+        for (int i = 1; i < label.length(); i++) {
+            if (!Character.isDigit(label.charAt(i)))
+                return -1;
+        }
+        return Integer.parseInt(label.substring(1));
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public int getId() {
+        return id;
+    }
+
     public String getLabelName() {
         return this.label;
     }
@@ -19,22 +68,16 @@ public class LabelImpl implements Label {
     public String getLabelRepresentation() {return this.label;}
 
     @Override
-    //implement equals and hashcode based on label string
     public boolean equals(Object obj) {
-        if (this == obj) return true;
-        if (obj == null || getClass() != obj.getClass()) return false;
-        LabelImpl label1 = (LabelImpl) obj;
-        return label.equals(label1.getLabelRepresentation());
+        return this == obj; // one instance a name
     }
     @Override
-    //implement hashcode based on label string
     public int hashCode() {
-        return Objects.hash(getLabelRepresentation());
+        return hash;
     }
     public Label myClone() {
-        return new LabelImpl(this.label);
+        return this;
     }
 
 
 }
-
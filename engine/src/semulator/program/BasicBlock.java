@@ -0,0 +1,90 @@
+package semulator.program;
+
+import semulator.execution.ExecutionState;
+import semulator.impl.api.basic.OpDecrease;
+import semulator.impl.api.basic.OpIncrease;
+import semulator.impl.api.basic.OpNeutral;
+import semulator.impl.api.skeleton.AbstractOpBasic;
+
+import java.util.Arrays;
+
+/**
+ * A run of increases, decreases and anchors that only fall through to each other, entered at its first op.
+ * The block changes its registers op by op but charges the cycles of all its ops at once and
+ * moves on to the op after it without looking at a label. Every jump target, the op after a jump or a call
+ * and the entry of the image start a block, so a run never gets into the middle of one.
+ */
+final class BasicBlock {
+
+    private final int[] changes; // the slot an op increases, or -slot - 1 for a decrease. anchors change nothing
+    private final int cycles;
+    private final int steps;
+    private final int next;
+
+    private BasicBlock(int[] changes, int cycles, int steps, int next) {
+        this.changes = changes;
+        this.cycles = cycles;
+        this.steps = steps;
+        this.next = next;
+    }
+
+    // the block that starts at every op that starts one, null where none does
+    static BasicBlock[] of(AbstractOpBasic[] ops, int[] jumpTargets, int[] fallTargets, int[] fallCycles,
+                           boolean[] skipped, LoopIdiom[] loops, int entry) {
+        int size = ops.length;
+        boolean[] starts = new boolean[size + 1];
+        starts[Math.max(entry, 0)] = true;
+        for (int pc = 0; pc < size; pc++) {
+            if (skipped[pc])
+                continue;
+            if (jumpTargets[pc] >= 0)
+                starts[jumpTargets[pc]] = true;
+            if (!straight(ops[pc]) && fallTargets[pc] >= 0)
+                starts[fallTargets[pc]] = true;
+            if (loops[pc] != null)
+                starts[loops[pc].getExit()] = true;
+        }
+
+        BasicBlock[] blocks = new BasicBlock[size];
+        int[] changes = new int[size];
+        for (int start = 0; start < size; start++) {
+            if (!starts[start] || skipped[start] || !straight(ops[start]))
+                continue;
+            int count = 0;
+            int steps = 0;
+            int cycles = 0;
+            int pc = start;
+            do {
+                AbstractOpBasic op = ops[pc];
+                if (op instanceof OpIncrease)
+                    changes[count++] = op.getSlot();
+                else if (op instanceof OpDecrease)
+                    changes[count++] = -op.getSlot() - 1;
+                cycles += op.getCycles() + fallCycles[pc];
+                steps++;
+                pc = fallTargets[pc];
+            } while (pc >= 0 && pc < size && !starts[pc] && straight(ops[pc]));
+            blocks[start] = new BasicBlock(Arrays.copyOf(changes, count), cycles, steps, pc);
+        }
+        return blocks;
+    }
+
+    // ops that always fall through and whose cycles never change
+    private static boolean straight(AbstractOpBasic op) {
+        return op instanceof OpIncrease || op instanceof OpDecrease || op instanceof OpNeutral;
+    }
+
+    // runs the block and leaves the state at the op after it, returns the steps it took
+    int run(ExecutionState state) {
+        long[] registers = state.getRegisters();
+        for (int change : changes) {
+            if (change >= 0)
+                registers[change]++;
+            else if (registers[-change - 1] > 0)
+                registers[-change - 1]--;
+        }
+        state.increaseCycleCounter(cycles);
+        state.setPc(next);
+        return steps;
+    }
+}
@@ -0,0 +1,9 @@
+package semulator.program;
+
+// a program image turned into JVM code by ProgramCompiler
+interface CompiledProgram {
+
+    // runs from the image's entry on registers until the program ends and returns the steps it took.
+    // exit gets the pc the run stopped at (the image's size, or the op that jumped to EXIT) and the cycles it charged
+    long run(long[] registers, int[] exit);
+}
@@ -0,0 +1,45 @@
+package semulator.program;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the cycles of a program as if it was expanded to some degree while it runs at degree 0.
+ * Every synthetic op knows how many cycles its expansion takes from the values it runs on.
+ * What the ops can't see are the work variables their expansions add, which keep their values
+ * from one time the op runs to the next. A model keeps those for one program or call,
+ * by a key its owner picks, and has a model of its own for every call inside it.
+ */
+public final class CycleModel {
+
+    // what a call keeps: the model of its function's body, the variables its arguments are put in,
+    // the work variables of the op it ends with and the registers of the body inlined at the call.
+    // the model of a function argument is kept under its index
+    public static final int CALL_BODY = -1;
+    public static final int CALL_ARGUMENTS = -1;
+    public static final int CALL_RESULT = -2;
+    public static final int CALL_REGISTERS = -3;
+
+    private final int degree;
+    private final Map<Integer, long[]> hidden = new HashMap<>();
+    private final Map<Integer, CycleModel> children = new HashMap<>();
+
+    public CycleModel(int degree) {
+        if (degree < 0)
+            throw new IllegalArgumentException("degree must not be negative, got " + degree);
+        this.degree = degree;
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    // the work variables kept under key, all 0 the first time they are asked for
+    public long[] hidden(int key, int count) {
+        return hidden.computeIfAbsent(key, k -> new long[count]);
+    }
+
+    public CycleModel child(int key, int degree) {
+        return children.computeIfAbsent(key, k -> new CycleModel(degree));
+    }
+}
@@ -0,0 +1,201 @@
+package semulator.program;
+
+import semulator.execution.ExecutionState;
+import semulator.execution.ExecutionTrace;
+import semulator.impl.api.skeleton.AbstractOpBasic;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * A run that is computed one step at a time, only as far as the caller asks for.
+ * Every computed step is kept in an ExecutionTrace, so going back and forth over
+ * steps that were already computed does not run anything again. The trace is kept in a memory mapped file,
+ * so a run of any length can be stepped back all the way, close deletes the file.
+ * A reversible session keeps no trace: it keeps only the state of the step the caller is looking at
+ * and a StepLog, steps back by undoing the last step on that state and steps forward by running the op again.
+ */
+public class ExecutionSession implements AutoCloseable {
+
+    private final FunctionExecutorImpl program;
+    private final List<FunctionExecutor> functions;
+    private final ProgramImage image;
+    private final ExecutionState state; // at the next op to compute
+    private final ExecutionTrace trace; // null in a reversible session
+    private final StepLog log;          // null unless reversible
+
+    private long steps;     // steps computed so far
+    private boolean halted;
+    private int position;   // the step the caller is looking at
+    private boolean haltLogged; // the op that jumped to EXIT is in the log, it may have charged cycles
+    private volatile boolean pauseRequested;
+
+    ExecutionSession(FunctionExecutorImpl program, List<Long> inputs, List<FunctionExecutor> functions, boolean reversible) {
+        this.program = program;
+        this.functions = functions;
+        image = program.getImage();
+        state = image.newState(FunctionExecutorImpl.toArray(inputs), program.getArgumentEvaluation());
+        trace = reversible ? null : newTrace(image);
+        log = reversible ? new StepLog() : null;
+
+        halted = image.size() == 0;
+        if (trace != null)
+            trace.start(halted ? -1 : state.getPc(), state);
+        if (halted)
+            program.finishRun(state);
+    }
+
+    // a trace on the heap if there is no temp directory to put a file in
+    private static ExecutionTrace newTrace(ProgramImage image) {
+        try {
+            return ExecutionTrace.mapped(image.getVariables(), image.getVariableSlots());
+        } catch (UncheckedIOException e) {
+            return new ExecutionTrace(image.getVariables(), image.getVariableSlots());
+        }
+    }
+
+    public boolean isReversible() {
+        return log != null;
+    }
+
+    public boolean hasNext() {
+        if (log == null)
+            return position < trace.size() - 1 || advance();
+        if (halted)
+            return false;
+        if (image.getJumpTarget(state.getPc()) != image.size())
+            return true;
+        // only running an op that may jump to EXIT tells whether there is a step after it
+        if (!advance())
+            return false;
+        log.undo(image, state);
+        steps--;
+        halted = false;
+        return true;
+    }
+
+    // moves to the next step, computing it if needed. false once the program is done
+    public boolean step() {
+        if (log != null) {
+            if (!advance())
+                return false;
+            position++;
+            return true;
+        }
+        if (!hasNext())
+            return false;
+        position++;
+        return true;
+    }
+
+    public boolean stepBack() {
+        if (position == 0)
+            return false;
+        if (log != null) {
+            if (haltLogged) {
+                log.undo(image, state);
+                haltLogged = false;
+            }
+            log.undo(image, state);
+            steps--;
+            halted = false;
+        }
+        position--;
+        return true;
+    }
+
+    // steps until stop accepts the new step, the program is done or pause() is called.
+    // returns true only if it stopped because of the predicate
+    public boolean runUntil(Predicate<ExecutionSession> stop) {
+        pauseRequested = false;
+        while (!pauseRequested && step()) {
+            if (stop.test(this))
+                return true;
+        }
+        return false;
+    }
+
+    // may be called from another thread to stop a runUntil in progress
+    public void pause() {
+        pauseRequested = true;
+    }
+
+    public int getStep() {
+        return position;
+    }
+
+    // the op that runs next at the current step, -1 if the program is done
+    public int getPc() {
+        if (log == null)
+            return trace.getPc(position);
+        return state.getPc() < image.size() ? state.getPc() : -1;
+    }
+
+    public TreeMap<VariableImpl, Long> getSnapshot() {
+        if (log == null)
+            return trace.getSnapshot(position);
+        List<VariableImpl> variables = image.getVariables();
+        int[] variableSlots = image.getVariableSlots();
+        TreeMap<VariableImpl, Long> snap = new TreeMap<>(VariableImpl.BY_NAME);
+        for (int i = 0; i < variableSlots.length; i++)
+            snap.put(variables.get(i), state.get(variableSlots[i]));
+        return snap;
+    }
+
+    public long getValue(VariableImpl variable) {
+        if (log == null)
+            return trace.getValue(position, variable);
+        int index = image.getVariables().indexOf(variable);
+        if (index < 0)
+            throw new IllegalArgumentException("variable " + variable.getRepresentation() + " is not traced");
+        return state.get(image.getVariableSlots()[index]);
+    }
+
+    // bytes a reversible session keeps to step back over the steps so far, 0 for a traced one
+    public long getLogBytes() {
+        return log == null ? 0 : log.bytes();
+    }
+
+    private boolean advance() {
+        if (halted)
+            return false;
+        int pc = state.getPc();
+        AbstractOpBasic op = image.getOp(pc);
+        int slot = op.getSlot();
+        long before = log != null && slot != VariableSlots.NO_SLOT ? state.get(slot) : 0;
+        int cycles = state.getCycles();
+        int next = image.executeStep(state, functions);
+        if (log != null)
+            log.record(op, pc, before, state.getCycles() - cycles);
+        if (next == ProgramImage.HALTED) {
+            halted = true;
+            haltLogged = log != null;
+            program.finishRun(state);
+            return false;
+        }
+        halted = next >= image.size();
+        steps++;
+        if (trace != null)
+            trace.step(steps, halted ? -1 : next, slot, state);
+        if (halted)
+            program.finishRun(state);
+        return true;
+    }
+
+    // stops a runUntil in progress and gives the trace back, the session can't be used after
+    @Override
+    public void close() {
+        pause();
+        if (trace != null)
+            trace.close();
+    }
+
+    // cycles of the steps computed so far, all of them once the program is done
+    public int getCycles() {
+        return state.getCycles();
+    }
+}
@@ -0,0 +1,8 @@
+package semulator.program;
+
+// how a program image runs when nobody looks at its steps, the results and cycles are the same with every one
+public enum ExecutionStrategy {
+    INTERPRETED,    // op by op, see ProgramImage
+    BLOCKS,         // a block of increases and decreases at a time, see BasicBlock
+    COMPILED        // as JVM code, see ProgramCompiler. an image that can't be compiled is interpreted
+}
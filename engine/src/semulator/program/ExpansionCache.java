@@ -0,0 +1,124 @@
+package semulator.program;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The program expanded to every degree that was asked for, so switching between degrees is a lookup.
+ * Every degree is expanded from a copy of the program at degree 0 of its own, and the cache never
+ * changes a program once it is in: expansion changes the call ops it expands and collapse walks the parents
+ * expansion left, so two degrees can't share ops. Holds at most maxOps ops over all degrees, an expanded program
+ * is mostly its ops. The least recently used degrees go first, the one asked for last always stays.
+ */
+public class ExpansionCache {
+
+    public static final long DEFAULT_MAX_OPS = 1 << 20;
+
+    private final FunctionExecutor base; // degree 0, never handed out
+    private final int maxDegree;
+    private final long maxOps;
+    private final LinkedHashMap<Integer, FunctionExecutor> degrees = new LinkedHashMap<>(16, 0.75f, true);
+    private long ops;
+
+    public ExpansionCache(FunctionExecutor program) {
+        this(program, DEFAULT_MAX_OPS);
+    }
+
+    // program is at degree 0, the cache works on a copy of it
+    public ExpansionCache(FunctionExecutor program, long maxOps) {
+        if (maxOps < 1)
+            throw new IllegalArgumentException("maxOps must be positive, got " + maxOps);
+        this.maxOps = maxOps;
+        base = copy(program);
+        maxDegree = base.getProgramDegree();
+    }
+
+    public int getMaxDegree() {
+        return maxDegree;
+    }
+
+    // the program expanded degree times. the same program until it is evicted, don't change its ops,
+    // take it for that
+    public FunctionExecutor get(int degree) {
+        return get(degree, ExpansionProgress.NONE);
+    }
+
+    // like get, telling progress how the expansion goes if the degree is not here yet. the cache is not locked
+    // while it expands, a cancelled expansion throws CancellationException and leaves nothing behind
+    public FunctionExecutor get(int degree, ExpansionProgress progress) {
+        checkDegree(degree);
+        synchronized (this) {
+            FunctionExecutor program = degrees.get(degree);
+            if (program != null)
+                return program;
+        }
+        FunctionExecutor expanded = expand(degree, progress);
+        synchronized (this) {
+            FunctionExecutor program = degrees.get(degree);
+            if (program != null)
+                return program; // expanded on another thread meanwhile
+            degrees.put(degree, expanded);
+            ops += expanded.getOps().size();
+            evict();
+            return expanded;
+        }
+    }
+
+    // the program expanded degree times for a caller that is going to change it, the cache forgets it
+    public synchronized FunctionExecutor take(int degree) {
+        FunctionExecutor program = get(degree);
+        degrees.remove(degree);
+        ops -= program.getOps().size();
+        return program;
+    }
+
+    // forgets program if it came from get, for a caller that changes it after all
+    public synchronized void forget(FunctionExecutor program) {
+        Iterator<Map.Entry<Integer, FunctionExecutor>> entries = degrees.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Integer, FunctionExecutor> entry = entries.next();
+            if (entry.getValue() == program) {
+                ops -= program.getOps().size();
+                entries.remove();
+                return;
+            }
+        }
+    }
+
+    public synchronized boolean contains(int degree) {
+        return degrees.containsKey(degree);
+    }
+
+    private void checkDegree(int degree) {
+        if (degree < 0 || degree > maxDegree)
+            throw new IllegalArgumentException("degree " + degree + " is out of 0-" + maxDegree);
+    }
+
+    // one degree at a time, the way the UI always expanded
+    private FunctionExecutor expand(int degree, ExpansionProgress progress) {
+        FunctionExecutor program = copy(base);
+        for (int i = 0; i < degree; i++) {
+            progress.level(i + 1, degree);
+            program.resetSnap();
+            program.expandProgram(1, progress);
+        }
+        return program;
+    }
+
+    private void evict() {
+        Iterator<FunctionExecutor> programs = degrees.values().iterator();
+        while (ops > maxOps && degrees.size() > 1) {
+            ops -= programs.next().getOps().size();
+            programs.remove();
+        }
+    }
+
+    // base is never changed, so copies of it may be made on any thread
+    private static FunctionExecutor copy(FunctionExecutor program) {
+        FunctionExecutor copy = program.myClone();
+        if (copy instanceof SprogramImpl sprogram)
+            sprogram.calculateQuoteDegree();
+        return copy;
+    }
+}
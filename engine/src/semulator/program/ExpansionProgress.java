@@ -0,0 +1,25 @@
+package semulator.program;
+
+// hears how an expansion goes and may stop it, an expansion checks isCancelled before every op it expands
+public interface ExpansionProgress {
+
+    ExpansionProgress NONE = new ExpansionProgress() {
+        @Override
+        public void expanded(int ops, int workVars) { }
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    // level of levels is about to be expanded, from 1
+    default void level(int level, int levels) { }
+
+    // ops emitted for the level so far and the work variables the program made so far
+    void expanded(int ops, int workVars);
+
+    // a background task is cancelled by interrupting its thread
+    default boolean isCancelled() {
+        return Thread.currentThread().isInterrupted();
+    }
+}
@@ -1,10 +1,15 @@
 package semulator.program;
 
-import javafx.util.Pair;
+import semulator.execution.ArgumentEvaluation;
 import semulator.execution.ExecutionContext;
+import semulator.execution.ExecutionTrace;
+import semulator.execution.Snapshot;
+import semulator.execution.TraceLevel;
+import semulator.execution.TraceSink;
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.label.Label;
 import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
 
 import java.util.*;
 
@@ -12,6 +17,7 @@ public interface FunctionExecutor
 {
     public String getName();
     FunctionExecutor getFunction(String functionName);
+    void setFunctionScope(List<FunctionExecutor> functions);
     void addLabelSet(LinkedHashSet<Label> labels);
     public LinkedHashSet <Label> getLabelSet();
     void addOp(AbstractOpBasic instruction);
@@ -24,7 +30,6 @@ public interface FunctionExecutor
     void createFirstSnap(List<Long> input);
     int getAmountOfVars();
     Long getVariableValue(VariableImpl var);
-    void addSnap(ArrayList<VariableImpl> vars, ArrayList<Long> vals);
     AbstractOpBasic getOpByLabel(Label label);
     AbstractOpBasic getNextOp();
     void ChangeOpIndex(AbstractOpBasic currentOp);
@@ -36,11 +41,20 @@ public interface FunctionExecutor
     Set<VariableImpl> getAllVars();
     void addLabel(Label label, AbstractOpBasic op);
     FunctionExecutor myClone();
+    FunctionTemplate getTemplate();
     int getProgramDegree();
     void expandProgram(int degree);
+    void expandProgram(int degree, ExpansionProgress progress);
     void expandSingle(AbstractOpBasic opToExpand, int degree);
     VariableImpl newWorkVar();
     void setContext(ExecutionContext context);
+    VariableSlots getSlots();
+    void setArgumentEvaluation(ArgumentEvaluation argumentEvaluation);
+    ArgumentEvaluation getArgumentEvaluation();
+    void setOptimization(Optimization optimization);
+    Optimization getOptimization();
+    void setExecutionStrategy(ExecutionStrategy strategy);
+    ExecutionStrategy getExecutionStrategy();
     Map<VariableImpl, Long> getCurrSnap();
     void collapse();
     void collapseSingle(AbstractOpBasic op, int i);
@@ -50,7 +64,12 @@ public interface FunctionExecutor
     void restoreOriginalVars();
     void resetSnap();
 
-    List<Pair<Integer, TreeMap<VariableImpl, Long>>> run(List<Long> inputs, List <FunctionExecutor> functions);
+    List<Snapshot> run(List<Long> inputs, List <FunctionExecutor> functions);
+    List<Snapshot> run(List<Long> inputs, List <FunctionExecutor> functions, TraceLevel traceLevel, int sampleRate);
+    void run(List<Long> inputs, List <FunctionExecutor> functions, TraceSink sink);
+    ExecutionTrace trace(List<Long> inputs, List <FunctionExecutor> functions);
+    ExecutionSession startSession(List<Long> inputs, List <FunctionExecutor> functions);
+    ExecutionSession startReversibleSession(List<Long> inputs, List <FunctionExecutor> functions);
 
     void changeInputVar(Map<VariableImpl, VariableImpl> vars);
 }
@@ -1,31 +1,58 @@
 package semulator.program;
 
-import javafx.util.Pair;
+import semulator.execution.ArgumentEvaluation;
+import semulator.execution.CallMemo;
 import semulator.execution.ExecutionContext;
 import semulator.execution.ExecutionContextImpl;
+import semulator.execution.ExecutionState;
+import semulator.execution.ExecutionTrace;
+import semulator.execution.RunResult;
+import semulator.execution.Snapshot;
+import semulator.execution.SnapshotSink;
+import semulator.execution.TraceSink;
+import semulator.execution.TraceLevel;
 import semulator.impl.api.skeleton.AbstractOpBasic;
+import semulator.impl.api.skeleton.OpData;
 import semulator.impl.api.skeleton.VariableUser;
 import semulator.impl.api.skeleton.functionArgs.AbstractArgument;
 import semulator.impl.api.skeleton.functionArgs.FunctionArgument;
 import semulator.impl.api.skeleton.functionArgs.VariableArgument;
+import semulator.impl.api.synthetic.OpAssignment;
 import semulator.impl.api.synthetic.OpFunctionBase;
 import semulator.label.FixedLabel;
 import semulator.label.Label;
 import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinTask;
 
 public class FunctionExecutorImpl implements FunctionExecutor {
 
     protected final String name;
     protected  List<AbstractOpBasic> opList;
-    protected int cycles;
     protected int opListIndex;
     protected List<VariableImpl> inputVars;
     protected ExecutionContextImpl context;
     protected Set<VariableImpl> variables;
     protected Set<VariableImpl> origVariables;
     protected LinkedHashSet <Label> labelsHashSet;
+    protected ProgramImage image; // built on first run, dropped whenever the program changes
+    private ProgramImage modelImage; // what runExpanded runs, never optimized. dropped with image
+    protected CallMemo callMemo; // shared with clones until one of them changes its ops
+    private FunctionTemplate template; // what expanding a call to this function inlines, shared with clones like callMemo
+    protected List<FunctionExecutor> functionScope; // the functions of the program, what getFunction looks in
+    protected Optimization optimization = Optimization.NONE; // what the image may skip
+    protected ExecutionStrategy strategy = ExecutionStrategy.INTERPRETED; // how the image runs
+    private final Deque<ExecutionState> statePool = new ArrayDeque<>(); // states of calls that returned, reused by the next ones
+    private int workVarsMade; // by expansions of this program, what ExpansionProgress hears
+    private volatile ExecutionState lastRun; // the state the last run ended in, what getVariableValue and calculateCycles show
+
+    // functions being cloned on this thread and their copies so far. a function that calls itself
+    // gets a copy that calls the copy, so a clone shares nothing with the function it was cloned from
+    private static final ThreadLocal<Map<FunctionExecutor, FunctionExecutor>> cloning =
+            ThreadLocal.withInitial(IdentityHashMap::new);
 
     private String userString;
 
@@ -34,7 +61,6 @@ public class FunctionExecutorImpl implements FunctionExecutor {
         opList = new ArrayList<>();
         opListIndex = 0;
         context = new ExecutionContextImpl();
-        cycles = 0;
         variables = new HashSet<>();
         labelsHashSet = new LinkedHashSet<>();
         inputVars = new ArrayList<>();
@@ -50,6 +76,7 @@ public class FunctionExecutorImpl implements FunctionExecutor {
     public void setAllVars(Set<VariableImpl> inputVars)
     {
         variables.addAll( inputVars);
+        variablesChanged();
     }
     @Override
     public Set<VariableImpl> getAllVars()
@@ -57,7 +84,13 @@ public class FunctionExecutorImpl implements FunctionExecutor {
         return variables;
     }
     @Override
-    public Long getVariableValue(VariableImpl variable) { return context.getVariableValue(variable); }
+    public Long getVariableValue(VariableImpl variable) {
+        ExecutionState state = lastRun;
+        if (state == null)
+            return context.getVariableValue(variable);
+        int slot = state.getSlots().find(variable);
+        return slot == VariableSlots.NO_SLOT ? null : state.get(slot);
+    }
     @Override
     public VariableImpl getNextVar(int i) {
         return inputVars.get(i);
@@ -69,7 +102,7 @@ public class FunctionExecutorImpl implements FunctionExecutor {
     @Override
     public void addLabel(Label label, AbstractOpBasic op)
     {
-        context.getLabelMap().put(label,op);
+        context.addLabel(label, op);
     }
     @Override
     public AbstractOpBasic getOpByLabel(Label label) { return context.getLabelMap().get(label); }
@@ -85,18 +118,29 @@ public class FunctionExecutorImpl implements FunctionExecutor {
     @Override
     public Map<VariableImpl, Long> getCurrSnap()
     {
-        return context.getCurrSnap();
+        Map<VariableImpl, Long> snap = new HashMap<>();
+        for (VariableImpl v : snapVariables())
+            snap.put(v, getVariableValue(v));
+        return snap;
+    }
+
+    // the variables a snapshot shows: the inputs, every var of the program and y
+    List<VariableImpl> snapVariables() {
+        Set<VariableImpl> vars = new LinkedHashSet<>(inputVars);
+        vars.addAll(variables);
+        vars.add(VariableImpl.RESULT);
+        return new ArrayList<>(vars);
     }
-    @Override
-    public void addSnap(ArrayList<VariableImpl> vars, ArrayList<Long> vals) {context.addSnap(vars, vals);}
 
     @Override
     public void setInputVars(List<VariableImpl> vars) {
         this.inputVars = vars;
+        variablesChanged();
     }
     @Override
     public void setInputVars(Set<VariableImpl> vars) {
         this.inputVars = new ArrayList<>(vars);
+        variablesChanged();
     }
     @Override
     public int getInputVarSize()
@@ -113,26 +157,67 @@ public class FunctionExecutorImpl implements FunctionExecutor {
     @Override
     public void setContext(ExecutionContext context) { this.context = new ExecutionContextImpl(context); }
     @Override
-    public FunctionExecutor getFunction(String functionName) {return null;};
+    public VariableSlots getSlots() { return context.getSlots(); }
+    @Override
+    public void setArgumentEvaluation(ArgumentEvaluation argumentEvaluation) { context.setArgumentEvaluation(argumentEvaluation); }
+    @Override
+    public ArgumentEvaluation getArgumentEvaluation() { return context.getArgumentEvaluation(); }
+    @Override
+    public void setOptimization(Optimization optimization) {
+        if (this.optimization != optimization) {
+            this.optimization = optimization;
+            opsChanged(); // a FULL run has other cycles, so the calls seen so far don't count
+        }
+    }
+    @Override
+    public Optimization getOptimization() { return optimization; }
+    @Override
+    public void setExecutionStrategy(ExecutionStrategy strategy) {
+        if (this.strategy != strategy) {
+            this.strategy = strategy;
+            variablesChanged(); // same results, only the image is built again
+        }
+    }
+    @Override
+    public ExecutionStrategy getExecutionStrategy() { return strategy; }
+    @Override
+    public FunctionExecutor getFunction(String functionName) {
+        if (functionScope == null)
+            return null;
+        for (FunctionExecutor func : functionScope) {
+            if (func.getName().equals(functionName))
+                return func;
+        }
+        return null;
+    }
+    @Override
+    public void setFunctionScope(List<FunctionExecutor> functions) { this.functionScope = functions; }
 
     @Override
     public int calculateCycles() {
-        return cycles;
+        ExecutionState state = lastRun;
+        return state == null ? context.getCycles() : state.getCycles();
     }
-    public void increaseCycleCounter(int cycles) { this.cycles += cycles; }
+    public void increaseCycleCounter(int cycles) { context.increaseCycleCounter(cycles); }
 
     @Override
     public void init() {
         origVariables = new HashSet<>(variables);
+        inputVars.forEach(getSlots()::slotOf);
+        variables.stream()
+                .sorted(VariableImpl.BY_NAME)
+                .forEach(getSlots()::slotOf);
     }
 
     @Override
     public void restoreOriginalVars() {
         variables = new HashSet<>(origVariables);
+        variablesChanged();
     }
 
     @Override
     public void resetSnap() {
+        lastRun = null;
         context.reset();
         List<Long> zeros = new ArrayList<>(Collections.nCopies(getAmountOfVars(), 0L));
         createFirstSnap(zeros);
@@ -146,7 +231,52 @@ public class FunctionExecutorImpl implements FunctionExecutor {
         return opListIndex;
     }
     @Override
-    public void addOp(AbstractOpBasic op) { opList.add(op); }
+    public void addOp(AbstractOpBasic op) {
+        opList.add(op);
+        opsChanged();
+    }
+
+    private void opsChanged() {
+        variablesChanged();
+        callMemo = null;
+    }
+
+    private void variablesChanged() {
+        image = null;
+        modelImage = null;
+        template = null;
+        synchronized (statePool) {
+            statePool.clear();
+        }
+    }
+
+    public synchronized CallMemo getCallMemo() {
+        if (callMemo == null)
+            callMemo = new CallMemo();
+        return callMemo;
+    }
+
+    @Override
+    public synchronized FunctionTemplate getTemplate() {
+        if (template == null)
+            template = new FunctionTemplate(this);
+        return template;
+    }
+
+    // the image a cycle model runs the body of a call on. the registers of an inlined body live on from one call
+    // to the next, so no op may be skipped and no two variables may share a register
+    private synchronized ProgramImage getModelImage() {
+        if (modelImage == null)
+            modelImage = ProgramImage.of(this);
+        return modelImage;
+    }
+
+    // synchronized, the calls of a parallel run may be the first to need it at the same time
+    public synchronized ProgramImage getImage() {
+        if (image == null)
+            image = ProgramImage.of(this).optimized(optimization).using(strategy);
+        return image;
+    }
     public AbstractOpBasic getNextOp() {
         if ( opListIndex >= opList.size()) {
             opListIndex = 0;
@@ -175,7 +305,6 @@ public class FunctionExecutorImpl implements FunctionExecutor {
     }
 
     public void reset() {
-        this.cycles = 0;
         this.opListIndex = 0;
         context.reset();
     }
@@ -207,13 +336,24 @@ public class FunctionExecutorImpl implements FunctionExecutor {
                 ((VariableUser) op).setSecondaryVariable(secondaryVarNew);
         }
         }
+        opsChanged();
     }
 
     @Override
     public FunctionExecutor myClone() {
+        Map<FunctionExecutor, FunctionExecutor> inProgress = cloning.get();
+        FunctionExecutor copy = inProgress.get(this);
+        if (copy != null) // a recursive call, the op calling it is being cloned right now
+            return copy;
+
         FunctionExecutorImpl newProgram = new FunctionExecutorImpl(this.name);
-        for (AbstractOpBasic op : this.opList) {
-            newProgram.addOp( op.myClone()); // Assuming AbstractOpBasic is immutable or properly cloned
+        inProgress.put(this, newProgram);
+        try {
+            for (AbstractOpBasic op : this.opList) {
+                newProgram.addOp(op.myClone()); // Assuming AbstractOpBasic is immutable or properly cloned
+            }
+        } finally {
+            inProgress.remove(this);
         }
         newProgram.setInputVars(new ArrayList<>(this.inputVars));
         newProgram.setAllVars(new HashSet<>(this.variables));
@@ -221,6 +361,11 @@ public class FunctionExecutorImpl implements FunctionExecutor {
         newProgram.addLabelSet(new LinkedHashSet<>(this.labelsHashSet));
         newProgram.setUserString(this.userString);
         newProgram.origVariables = new HashSet<>(this.origVariables);
+        newProgram.callMemo = getCallMemo();
+        newProgram.template = getTemplate();
+        newProgram.functionScope = functionScope;
+        newProgram.optimization = optimization;
+        newProgram.strategy = strategy;
         return newProgram;
     }
 
@@ -228,16 +373,28 @@ public class FunctionExecutorImpl implements FunctionExecutor {
     {
         VariableImpl tmp = context.newWorkVar();
         variables.add(tmp);
+        template = null;
+        workVarsMade++;
         return tmp;
     }
 
     public void expandProgram(int degree)
+    {
+        expandProgram(degree, ExpansionProgress.NONE);
+    }
+
+    // a cancelled expansion throws CancellationException and leaves the program half expanded, throw it away
+    public void expandProgram(int degree, ExpansionProgress progress)
     {
         List<AbstractOpBasic> expandedList = new  ArrayList<>();
         for (AbstractOpBasic op: opList) {
+            if (progress.isCancelled())
+                throw new CancellationException("expansion of " + name + " was cancelled");
             expandedList.addAll(op.expand(degree,this));
+            progress.expanded(expandedList.size(), workVarsMade);
         }
         opList = expandedList;
+        opsChanged();
         updateVariables();
     }
 
@@ -251,6 +408,7 @@ public class FunctionExecutorImpl implements FunctionExecutor {
                 expandedList.add(op);
         }
         opList = expandedList;
+        opsChanged();
         updateVariables();
     }
 
@@ -281,6 +439,7 @@ public class FunctionExecutorImpl implements FunctionExecutor {
             }
         }
         opList = expandedList;
+        opsChanged();
         updateLabelsAfterCollapse();
         updateVariables();
     }
@@ -308,6 +467,7 @@ public class FunctionExecutorImpl implements FunctionExecutor {
         }
 
         opList = expandedList;
+        opsChanged();
         updateLabelsAfterCollapse();
         updateVariables();
     }
@@ -321,6 +481,7 @@ public class FunctionExecutorImpl implements FunctionExecutor {
                 variables.add(((VariableUser) op).getSecondaryVariable());
             }
         }
+        variables.forEach(getSlots()::slotOf);
     }
 
     private void updateLabelsAfterCollapse() {
@@ -328,83 +489,231 @@ public class FunctionExecutorImpl implements FunctionExecutor {
         context.getLabelMap().clear();
         for (AbstractOpBasic op : opList) {
             if (op.getLabel() != FixedLabel.EMPTY && op.getLabel() != FixedLabel.EXIT) { // we don't want to add empty labels to the map
-                context.getLabelMap().put(op.getLabel(), op);
+                context.addLabel(op.getLabel(), op);
             }
         }
     }
 
     @Override
-    public List<Pair<Integer, TreeMap<VariableImpl, Long>>> run(List<Long> inputs, List <FunctionExecutor> functions) {
-        List<Pair<Integer, TreeMap<VariableImpl, Long>>> listOfRunSteps = new ArrayList<>();
-        TreeMap<VariableImpl, Long> runMap = new TreeMap<>(Comparator.comparing(VariableImpl::getRepresentation));
+    public List<Snapshot> run(List<Long> inputs, List <FunctionExecutor> functions) {
+        return run(inputs, functions, TraceLevel.FULL, 1);
+    }
 
-        reset();
-        resetSnap();
-        createFirstSnap(inputs);  // enter the vals from the user to the input vars
-        AbstractOpBasic current = getNextOp();
+    @Override
+    public List<Snapshot> run(List<Long> inputs, List <FunctionExecutor> functions, TraceLevel traceLevel, int sampleRate) {
+        ProgramImage image = getImage();
+        SnapshotSink sink = new SnapshotSink(image.getVariables(), image.getVariableSlots(), traceLevel, sampleRate);
+        run(image, inputs, functions, sink);
+        return sink.getSteps();
+    }
 
-        // put init state
-        runMap.putAll(getCurrSnap());
-        listOfRunSteps.add(new Pair<>(getOpsIndex()-1, runMap));
+    @Override
+    public ExecutionTrace trace(List<Long> inputs, List <FunctionExecutor> functions) {
+        ProgramImage image = getImage();
+        ExecutionTrace trace = new ExecutionTrace(image.getVariables(), image.getVariableSlots());
+        run(image, inputs, functions, trace);
+        return trace;
+    }
 
-        while (current != null) {
-            Label next;
-            if (current instanceof OpFunctionBase)
-                next = ((OpFunctionBase)current).execute(this, functions);
-            else
-                next = current.execute(this);
+    @Override
+    public ExecutionSession startSession(List<Long> inputs, List <FunctionExecutor> functions) {
+        return new ExecutionSession(this, inputs, functions, false);
+    }
 
-            if (next.equals(FixedLabel.EXIT)) {
-                break;
-            } else if (next.equals( FixedLabel.EMPTY )) {
-                current = getNextOp();
+    @Override
+    public ExecutionSession startReversibleSession(List<Long> inputs, List <FunctionExecutor> functions) {
+        return new ExecutionSession(this, inputs, functions, true);
+    }
+
+    @Override
+    public void run(List<Long> inputs, List <FunctionExecutor> functions, TraceSink sink) {
+        run(getImage(), inputs, functions, sink);
+    }
+
+    private void run(ProgramImage image, List<Long> inputs, List <FunctionExecutor> functions, TraceSink sink) {
+        ExecutionState state = image.newState(toArray(inputs), getArgumentEvaluation());
+        image.run(state, functions, sink);
+        finishRun(state);
+    }
+
+    // makes the state of a finished run the one the program shows
+    void finishRun(ExecutionState state) {
+        lastRun = state;
+    }
+
+    static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = values.get(i);
+        return array;
+    }
+
+    // runs the program in a state of its own. nothing of the program is changed, so any number of threads may do this at once
+    public RunResult runIsolated(long[] inputs, List <FunctionExecutor> functions) {
+        ProgramImage image = getImage();
+        ExecutionState state = enterState(image, inputs, getArgumentEvaluation());
+        try {
+            image.run(state, functions);
+            return new RunResult(inputs, state.get(VariableSlots.RESULT_SLOT), state.getCycles());
+        } finally {
+            leaveState(state);
+        }
+    }
+
+    // runs the program as it is, but counts the cycles the program expanded degree more times would take.
+    // expansion keeps the result, so only the cycles differ from runIsolated
+    public RunResult runAtDegree(long[] inputs, List <FunctionExecutor> functions, int degree) {
+        ProgramImage image = getImage();
+        ExecutionState state = enterState(image, inputs, getArgumentEvaluation());
+        try {
+            image.run(state, functions, new CycleModel(degree));
+            return new RunResult(inputs, state.get(VariableSlots.RESULT_SLOT), state.getCycles());
+        } finally {
+            leaveState(state);
+        }
+    }
+
+    // runs the function as a call from callerContext and charges the caller what the expansion of the call
+    // to the degree of site takes: the arguments put in work variables and the function's body inlined.
+    // the op that made the call adds what it does with the result
+    public long runExpanded(ExecutionContext callerContext, List<AbstractArgument> functionArguments, List <FunctionExecutor> functions, CycleModel site)
+    {
+        int degree = site.getDegree();
+        int count = functionArguments == null ? 0 : functionArguments.size();
+        long[] funcVars = new long[count];
+        long[] workVars = site.hidden(CycleModel.CALL_ARGUMENTS, count); // the inlined inputs, as the last call left them
+        int cycles = 0;
+        for (int i = 0; i < count; i++) {
+            AbstractArgument arg = functionArguments.get(i);
+            if (arg.getType().equals(AbstractArgument.ArgumentTypes.VARIABLE)) {
+                funcVars[i] = callerContext.get(((VariableArgument) arg).getSlot());
+                cycles += OpAssignment.expandedCycles(degree - 1, workVars[i], funcVars[i]);
+                continue;
+            }
+            FunctionArgument funcArg = (FunctionArgument) arg;
+            FunctionExecutorImpl argFunc = findFunction(funcArg.getFunctionName(), functions);
+            if (degree == 1) { // still a quote
+                funcVars[i] = argFunc.run(callerContext, funcArg.getArgument(), functions);
+                cycles += OpData.QUOTE.getCycles();
             } else {
-                AbstractOpBasic target = getOpByLabel(next);
-                if (target == null) {
-                    throw new IllegalStateException(
-                            "Jump to undefined label: " + next.getLabelRepresentation());
-                }
-                ChangeOpIndex(target);
-                current = target;
+                funcVars[i] = argFunc.runExpanded(callerContext, funcArg.getArgument(), functions, site.child(i, degree - 1));
+                cycles += OpAssignment.expandedCycles(degree - 2, workVars[i], funcVars[i]);
+            }
+        }
+
+        // the body is inlined at the call site once, its y and work variables keep what the last call left in them
+        ProgramImage image = getModelImage();
+        long[] registers = site.hidden(CycleModel.CALL_REGISTERS, image.getRegisterCount());
+        ExecutionState state = enterState(image, funcVars, callerContext.getArgumentEvaluation());
+        try {
+            long[] live = state.getRegisters();
+            System.arraycopy(registers, 0, live, 0, registers.length);
+            for (int i = 0; i < count && i < image.getInputCount(); i++)
+                live[image.getInputSlot(i)] = funcVars[i];
+            image.run(state, functions, site.child(CycleModel.CALL_BODY, degree - 1));
+            for (int i = 0; i < count && i < image.getInputCount(); i++)
+                workVars[i] = state.get(image.getInputSlot(i));
+            System.arraycopy(live, 0, registers, 0, registers.length);
+            callerContext.increaseCycleCounter(cycles + state.getCycles());
+            return state.get(VariableSlots.RESULT_SLOT);
+        } finally {
+            leaveState(state);
+        }
+    }
+
+    // runs the function as a call from callerContext, the cycles of the call are charged to the caller
+    public long run(ExecutionContext callerContext, List<AbstractArgument> functionArguments, List <FunctionExecutor> functions) throws IllegalArgumentException
+    {
+        CallMemo.Entry call = call(callerContext, functionArguments, functions);
+        callerContext.increaseCycleCounter(call.getCycles());
+        return call.getResult();
+    }
+
+    // result and cycles of the call, the cycles of its function arguments included. touches nothing but its own state
+    private CallMemo.Entry call(ExecutionContext callerContext, List<AbstractArgument> functionArguments, List <FunctionExecutor> functions)
+    {
+        long[] funcVars = new long[functionArguments == null ? 0 : functionArguments.size()];
+        int argumentCycles = evaluateArguments(callerContext, functionArguments, functions, funcVars);
+
+        CallMemo memo = getCallMemo();
+        CallMemo.Entry call = memo.get(funcVars);
+        if (call == null) {
+            ProgramImage image = getImage();
+            ExecutionState state = enterState(image, funcVars, callerContext.getArgumentEvaluation());
+            try {
+                image.run(state, functions);
+                call = memo.put(funcVars, state.get(VariableSlots.RESULT_SLOT), state.getCycles());
+            } finally {
+                leaveState(state);
             }
-            runMap = new TreeMap<>(Comparator.comparing(VariableImpl::getRepresentation));
-            runMap.putAll(getCurrSnap());
-            listOfRunSteps.add(new Pair<>(getOpsIndex()-1, runMap));
         }
-        return listOfRunSteps;
+        return call.plusCycles(argumentCycles);
     }
 
-    public Long  run(FunctionExecutor program, List<AbstractArgument> functionArguments, List <FunctionExecutor> functions) throws IllegalArgumentException
+    // puts the value of every argument in values and returns the cycles the function arguments took
+    private int evaluateArguments(ExecutionContext callerContext, List<AbstractArgument> functionArguments, List <FunctionExecutor> functions, long[] values)
     {
-        List<Long> funcVars = new ArrayList<>();
-        if ( functionArguments != null) {
-            functionArguments.forEach(arg-> {
-                if (arg.getType().equals(AbstractArgument.ArgumentTypes.VARIABLE)) {
-                    funcVars.add(program.getVariableValue(((VariableArgument) arg).getVariable()));
-                } else {
-                    // ArgumentTypes.FUNCTION
-                    String argFuncName = ((FunctionArgument) arg).getFunctionName();
-                    FunctionExecutorImpl argFunc = null;
-                    for (FunctionExecutor func : functions) {
-                        if (argFuncName.equals(func.getName())) {
-                            argFunc = (FunctionExecutorImpl)func;
-                            break;
-                        }
-                    }
-                    if (argFunc == null)
-                        throw new IllegalArgumentException("function " + argFuncName + " not found");
+        List<Integer> calls = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            AbstractArgument arg = functionArguments.get(i);
+            if (arg.getType().equals(AbstractArgument.ArgumentTypes.VARIABLE))
+                values[i] = callerContext.get(((VariableArgument) arg).getSlot());
+            else // ArgumentTypes.FUNCTION
+                calls.add(i);
+        }
 
-                    List<AbstractArgument> argFuncArgs = ((FunctionArgument) arg).getArgument();
-                    Long res =  argFunc.run(program, argFuncArgs, functions);
-                    funcVars.add(res);
-                }
-            });
+        CallMemo.Entry[] results = new CallMemo.Entry[calls.size()];
+        if (calls.size() > 1 && callerContext.getArgumentEvaluation() == ArgumentEvaluation.PARALLEL) {
+            // the arguments only read the caller's registers, so they can run at the same time
+            List<ForkJoinTask<CallMemo.Entry>> tasks = new ArrayList<>(calls.size());
+            for (int index : calls) {
+                FunctionArgument arg = (FunctionArgument) functionArguments.get(index);
+                FunctionExecutorImpl argFunc = findFunction(arg.getFunctionName(), functions);
+                tasks.add(ForkJoinTask.adapt(() -> argFunc.call(callerContext, arg.getArgument(), functions)));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            for (int i = 0; i < results.length; i++)
+                results[i] = tasks.get(i).join();
+        } else {
+            for (int i = 0; i < results.length; i++) {
+                FunctionArgument arg = (FunctionArgument) functionArguments.get(calls.get(i));
+                results[i] = findFunction(arg.getFunctionName(), functions).call(callerContext, arg.getArgument(), functions);
+            }
         }
 
-        run(funcVars, functions);
+        // combined in argument order whatever order they finished in
+        int cycles = 0;
+        for (int i = 0; i < results.length; i++) {
+            values[calls.get(i)] = results[i].getResult();
+            cycles += results[i].getCycles();
+        }
+        return cycles;
+    }
 
-        return getVariableValue(VariableImpl.RESULT);
+    private static FunctionExecutorImpl findFunction(String functionName, List <FunctionExecutor> functions) {
+        for (FunctionExecutor func : functions) {
+            if (functionName.equals(func.getName()))
+                return (FunctionExecutorImpl) func;
+        }
+        throw new IllegalArgumentException("function " + functionName + " not found");
+    }
+
+    private ExecutionState enterState(ProgramImage image, long[] inputs, ArgumentEvaluation argumentEvaluation) {
+        ExecutionState state;
+        synchronized (statePool) {
+            state = statePool.poll();
+        }
+        if (state == null || state.getSlots() != image.getSlots())
+            return image.newState(inputs, argumentEvaluation);
+        image.enter(state, inputs, argumentEvaluation);
+        return state;
+    }
+
+    private void leaveState(ExecutionState state) {
+        synchronized (statePool) {
+            statePool.push(state);
+        }
     }
-    public void addInputVar(VariableImpl var) { inputVars.add(var);}
-    public void addVar(VariableImpl var) { variables.add(var); }
+    public void addInputVar(VariableImpl var) { inputVars.add(var); variablesChanged(); }
+    public void addVar(VariableImpl var) { variables.add(var); variablesChanged(); }
 }
@@ -0,0 +1,223 @@
+package semulator.program;
+
+import semulator.impl.api.skeleton.AbstractOpBasic;
+import semulator.impl.api.skeleton.LabelJumper;
+import semulator.impl.api.skeleton.VariableUser;
+import semulator.impl.api.synthetic.OpFunctionBase;
+import semulator.label.FixedLabel;
+import semulator.label.Label;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The body of a function numbered once, for inlining it at any number of call sites.
+ * Every variable and label of the body gets a number, so a call site clones the ops and puts in
+ * its own work variables and labels by number, instead of cloning the whole function and renaming it through maps.
+ * A call site makes its work variables and labels in the same order renaming a clone would,
+ * so a program expands to the same ops either way. A function keeps its template until its ops or variables change.
+ */
+public final class FunctionTemplate {
+
+    private static final int NONE = -1;  // no label, or a variable the op doesn't have
+    private static final int EXIT = -2;
+    private static final int OTHER = -3; // a label of an op around the body, not one of the body's
+
+    private final FunctionExecutorImpl function;
+    private final AbstractOpBasic[] ops;
+    private final List<VariableImpl> inputs;
+    private final Set<VariableImpl> allVariables;
+    private boolean numbered;
+    private final Map<VariableImpl, Integer> variableIndex = new HashMap<>();
+    private VariableImpl[] variables;
+    private int[] otherVariables; // the function's variables in the order a clone of it lists them
+    private int[] mains;
+    private int[] secondaries;    // NONE for an op that has no second variable
+    private int[] argumentVariables; // what the arguments of calls in the body name
+    private final Map<Label, Integer> labelIndex = new HashMap<>();
+    private int[] labelOf;        // NONE, EXIT or the body label the op has
+    private int[] targetOf;       // NONE for an op that doesn't jump, EXIT or the body label it jumps to
+
+    // takes the function as it is now, the numbering waits for the first call site
+    FunctionTemplate(FunctionExecutorImpl function) {
+        this.function = function;
+        ops = function.getOps().toArray(new AbstractOpBasic[0]);
+        inputs = List.copyOf(function.getInputVar());
+        allVariables = new HashSet<>(function.getAllVars()); // the way myClone copies them
+    }
+
+    private synchronized void number() {
+        if (numbered)
+            return;
+        List<VariableImpl> found = new ArrayList<>();
+        inputs.forEach(variable -> number(variable, found));
+        Set<VariableImpl> listed = new HashSet<>();
+        listed.addAll(allVariables);
+        otherVariables = new int[listed.size()];
+        int next = 0;
+        for (VariableImpl variable : listed)
+            otherVariables[next++] = number(variable, found);
+
+        mains = new int[ops.length];
+        secondaries = new int[ops.length];
+        labelOf = new int[ops.length];
+        targetOf = new int[ops.length];
+        List<Integer> arguments = new ArrayList<>();
+        for (int i = 0; i < ops.length; i++) {
+            AbstractOpBasic op = ops[i];
+            mains[i] = number(op.getVariable(), found);
+            secondaries[i] = op instanceof VariableUser user ? number(user.getSecondaryVariable(), found) : NONE;
+
+            Label label = op.getLabel();
+            if (label == null || label.equals(FixedLabel.EMPTY))
+                labelOf[i] = NONE;
+            else if (label.equals(FixedLabel.EXIT))
+                labelOf[i] = EXIT;
+            else
+                labelOf[i] = labelIndex.computeIfAbsent(label, ignored -> labelIndex.size());
+
+            if (op instanceof OpFunctionBase call) {
+                for (VariableImpl variable : call.getArgumentVariables())
+                    arguments.add(number(variable, found));
+            }
+
+            targetOf[i] = NONE;
+            if (op instanceof LabelJumper jumper) {
+                Label target = jumper.getJumpLabel();
+                targetOf[i] = target.equals(FixedLabel.EXIT) ? EXIT : labelIndex.computeIfAbsent(target, ignored -> labelIndex.size());
+            }
+        }
+        argumentVariables = arguments.stream().mapToInt(Integer::intValue).toArray();
+        variables = found.toArray(new VariableImpl[0]);
+        numbered = true;
+    }
+
+    private int number(VariableImpl variable, List<VariableImpl> found) {
+        if (variable == null)
+            return NONE;
+        return variableIndex.computeIfAbsent(variable, added -> {
+            found.add(added);
+            return found.size() - 1;
+        });
+    }
+
+    // what a call site binds the function's variables to, by number
+    public VariableImpl[] newBindings() {
+        number();
+        return new VariableImpl[variables.length];
+    }
+
+    // ops the body has
+    public int size() {
+        return ops.length;
+    }
+
+    public VariableImpl getInput(int index) {
+        return inputs.get(index);
+    }
+
+    public void bind(VariableImpl[] bindings, VariableImpl variable, VariableImpl value) {
+        Integer index = variableIndex.get(variable);
+        if (index != null)
+            bindings[index] = value;
+    }
+
+    // every variable of the function the arguments didn't bind gets a work variable of program, y gets result
+    public void bindRest(VariableImpl[] bindings, VariableImpl result, FunctionExecutor program) {
+        for (int index : otherVariables)
+            bindRest(bindings, index, result, program);
+        for (int index : argumentVariables) // the function lists them all, but a call inlined must not keep a name of it
+            bindRest(bindings, index, result, program);
+    }
+
+    private void bindRest(VariableImpl[] bindings, int index, VariableImpl result, FunctionExecutor program) {
+        if (bindings[index] == null)
+            bindings[index] = variables[index].getType().equals(VariableType.RESULT) ? result : program.newWorkVar();
+    }
+
+    // the body with the call site's variables, under parent. the labels are still the function's, see relabel.
+    // a call of the function itself gets a copy of the function of its own, like any other call
+    public List<AbstractOpBasic> instantiate(VariableImpl[] bindings, AbstractOpBasic parent) {
+        List<AbstractOpBasic> body = new ArrayList<>(ops.length);
+        for (int i = 0; i < ops.length; i++) {
+            AbstractOpBasic op = ops[i].myClone();
+            body.add(op);
+            op.setVariable(mains[i] == NONE ? null : bindings[mains[i]]);
+            if (op instanceof VariableUser user)
+                user.setSecondaryVariable(secondaries[i] == NONE ? null : bindings[secondaries[i]]);
+            if (op instanceof OpFunctionBase call)
+                call.renameArguments(variable -> bindings[variableIndex.get(variable)]);
+            op.setParent(parent);
+        }
+        return body;
+    }
+
+    // gives every label of ops a new label of program, ops holds the body from bodyStart and ops of the call site
+    // around it. the last op is the caller's, its jump stays, and it gets the label a jump to EXIT goes to
+    public void relabel(List<AbstractOpBasic> ops, int bodyStart, FunctionExecutor program) {
+        number();
+        Label[] bound = new Label[labelIndex.size()];
+        Map<Label, Label> others = new HashMap<>();
+        boolean containsExit = false;
+        Label exitLabel = null;
+        AbstractOpBasic last = ops.getLast();
+
+        for (int i = 0; i < ops.size(); i++) {
+            AbstractOpBasic op = ops.get(i);
+            int bodyIndex = i - bodyStart;
+            boolean inBody = bodyIndex >= 0 && bodyIndex < this.ops.length;
+
+            Label label = op.getLabel();
+            int defined = inBody ? labelOf[bodyIndex] : labelNumber(label, true);
+            if (defined == EXIT) {
+                containsExit = true;
+                exitLabel = program.newUniqueLabel();
+                op.setLabel(exitLabel);
+            } else if (defined != NONE) {
+                Label mapped = map(defined, label, bound, others, program);
+                op.setLabel(mapped);
+                program.addLabel(mapped, op);
+            }
+
+            if (op instanceof LabelJumper jumper && op != last) {
+                Label target = jumper.getJumpLabel();
+                int jumped = inBody ? targetOf[bodyIndex] : labelNumber(target, false);
+                if (jumped == EXIT) {
+                    containsExit = true;
+                    if (exitLabel == null)
+                        exitLabel = program.newUniqueLabel();
+                    jumper.setJumpLabel(exitLabel);
+                } else {
+                    jumper.setJumpLabel(map(jumped, target, bound, others, program));
+                }
+            }
+        }
+        if (containsExit) {
+            last.setLabel(exitLabel);
+            program.addLabel(exitLabel, last);
+        }
+    }
+
+    private int labelNumber(Label label, boolean definition) {
+        if (definition && (label == null || label.equals(FixedLabel.EMPTY)))
+            return NONE;
+        if (label.equals(FixedLabel.EXIT))
+            return EXIT;
+        return labelIndex.getOrDefault(label, OTHER);
+    }
+
+    // the new label of a label, made the first time it is needed
+    private static Label map(int number, Label label, Label[] bound, Map<Label, Label> others, FunctionExecutor program) {
+        if (number == OTHER)
+            return others.computeIfAbsent(label, ignored -> program.newUniqueLabel());
+        if (bound[number] == null)
+            bound[number] = program.newUniqueLabel();
+        return bound[number];
+    }
+}
@@ -0,0 +1,100 @@
+package semulator.program;
+
+import semulator.execution.ExecutionState;
+import semulator.impl.api.basic.OpDecrease;
+import semulator.impl.api.basic.OpIncrease;
+import semulator.impl.api.basic.OpJumpNotZero;
+import semulator.impl.api.basic.OpNeutral;
+import semulator.impl.api.skeleton.AbstractOpBasic;
+
+/**
+ * A counting loop of basic ops that can run in one go, like the transfer loop
+ * {@code L: z ← z - 1; y ← y + 1; IF z ≠ 0 GOTO L} or the clear loop {@code L: z ← z - 1; IF z ≠ 0 GOTO L}.
+ * The body decreases the counter once and only increases other variables, so the loop runs
+ * max(z, 1) times and every increased variable grows by that count. The cycles are the ones
+ * the ops would have charged: the body on every round and the jump once, on the way out.
+ */
+final class LoopIdiom {
+
+    private final int exit;
+    private final int counterSlot;
+    private final int[] incrementSlots; // a variable increased twice in the body is in here twice
+    private final int bodyCycles;
+    private final int exitCycles;
+    private final int roundSteps;
+
+    private LoopIdiom(int exit, int counterSlot, int[] incrementSlots, int bodyCycles, int exitCycles, int roundSteps) {
+        this.exit = exit;
+        this.counterSlot = counterSlot;
+        this.incrementSlots = incrementSlots;
+        this.bodyCycles = bodyCycles;
+        this.exitCycles = exitCycles;
+        this.roundSteps = roundSteps;
+    }
+
+    // the loop that starts at head and jumps back to it from back, or null if the ops in between are not of that shape.
+    // the run goes on at exit, exitExtraCycles are charged on the way there
+    static LoopIdiom of(AbstractOpBasic[] ops, int head, int back, int exit, int exitExtraCycles) {
+        if (head >= back || !(ops[back] instanceof OpJumpNotZero))
+            return null;
+        int counterSlot = ops[back].getSlot();
+        int decrements = 0;
+        int increments = 0;
+        int bodyCycles = 0;
+        for (int pc = head; pc < back; pc++) {
+            AbstractOpBasic op = ops[pc];
+            if (op instanceof OpDecrease && op.getSlot() == counterSlot)
+                decrements++;
+            else if (op instanceof OpIncrease && op.getSlot() != counterSlot)
+                increments++;
+            else if (!(op instanceof OpNeutral))
+                return null;
+            bodyCycles += op.getCycles();
+        }
+        if (decrements != 1)
+            return null;
+
+        int[] incrementSlots = new int[increments];
+        int i = 0;
+        for (int pc = head; pc < back; pc++) {
+            if (ops[pc] instanceof OpIncrease)
+                incrementSlots[i++] = ops[pc].getSlot();
+        }
+        return new LoopIdiom(exit, counterSlot, incrementSlots, bodyCycles, ops[back].getCycles() + exitExtraCycles, back - head + 1);
+    }
+
+    int getExit() {
+        return exit;
+    }
+
+    int getCounterSlot() {
+        return counterSlot;
+    }
+
+    int[] getIncrementSlots() {
+        return incrementSlots;
+    }
+
+    int getBodyCycles() {
+        return bodyCycles;
+    }
+
+    int getExitCycles() {
+        return exitCycles;
+    }
+
+    int getRoundSteps() {
+        return roundSteps;
+    }
+
+    // runs the whole loop from its head, leaves the state after the jump fell through and returns the steps it took
+    long run(ExecutionState state) {
+        long rounds = Math.max(state.get(counterSlot), 1);
+        for (int slot : incrementSlots)
+            state.set(slot, state.get(slot) + rounds);
+        state.set(counterSlot, 0);
+        state.increaseCycleCounter((int) (rounds * bodyCycles + exitCycles));
+        state.setPc(exit);
+        return rounds * roundSteps;
+    }
+}
@@ -0,0 +1,9 @@
+package semulator.program;
+
+// what a program image may leave out of a run, see PeepholeOptimizer.
+// both optimizations also let idle work variables share registers, see WorkSlotAllocator
+public enum Optimization {
+    NONE,           // every op runs
+    KEEP_CYCLES,    // ops that change nothing are skipped, but their cycles are still charged
+    FULL            // ops that change nothing are skipped with their cycles, a run reports fewer cycles
+}
@@ -0,0 +1,169 @@
+package semulator.program;
+
+import semulator.impl.api.basic.OpDecrease;
+import semulator.impl.api.basic.OpIncrease;
+import semulator.impl.api.basic.OpJumpNotZero;
+import semulator.impl.api.basic.OpNeutral;
+import semulator.impl.api.skeleton.AbstractOpBasic;
+import semulator.impl.api.skeleton.LabelJumper;
+import semulator.impl.api.skeleton.VariableUser;
+import semulator.impl.api.skeleton.functionArgs.AbstractArgument;
+import semulator.impl.api.skeleton.functionArgs.FunctionArgument;
+import semulator.impl.api.skeleton.functionArgs.VariableArgument;
+import semulator.impl.api.synthetic.OpFunctionBase;
+import semulator.impl.api.synthetic.OpGoToLabel;
+import semulator.label.FixedLabel;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
+
+import java.util.List;
+
+/**
+ * Finds the ops of an image a run can skip, the ones expansion leaves everywhere:
+ * anchors (v ← v), GOTOs, the INC z; IF z != 0 GOTO L pairs that fake a goto and
+ * increases and decreases of variables nothing reads. The ops stay where they are, every jump
+ * and fall through that would reach a skipped op is pointed at the first op after it that really runs,
+ * so a pc of the optimized image is still the index of the op in the program the user sees.
+ * With KEEP_CYCLES the cycles of the skipped ops are charged on the jump or fall through that passes them.
+ */
+final class PeepholeOptimizer {
+
+    private final AbstractOpBasic[] ops;
+    private final int[] jumpTargets;
+    private final VariableSlots slots;
+    private final boolean keepCycles;
+    private final int size;
+
+    private final boolean[] skipped;
+    private final int[] next; // where a skipped op continues
+    private final int[] cost; // and the cycles it would have taken on the way
+    private int followedCycles;
+
+    private PeepholeOptimizer(AbstractOpBasic[] ops, int[] jumpTargets, VariableSlots slots, boolean keepCycles) {
+        this.ops = ops;
+        this.jumpTargets = jumpTargets;
+        this.slots = slots;
+        this.keepCycles = keepCycles;
+        size = ops.length;
+        skipped = new boolean[size];
+        next = new int[size];
+        cost = new int[size];
+    }
+
+    static ProgramImage optimize(ProgramImage image, AbstractOpBasic[] ops, int[] jumpTargets, VariableSlots slots, Optimization optimization) {
+        PeepholeOptimizer optimizer = new PeepholeOptimizer(ops, jumpTargets, slots, optimization == Optimization.KEEP_CYCLES);
+        optimizer.findSkipped();
+        optimizer.breakSkippedCycles();
+
+        int[] newJumpTargets = new int[optimizer.size];
+        int[] fallTargets = new int[optimizer.size];
+        int[] jumpCycles = new int[optimizer.size];
+        int[] fallCycles = new int[optimizer.size];
+        for (int pc = 0; pc < optimizer.size; pc++) {
+            fallTargets[pc] = optimizer.follow(pc + 1);
+            fallCycles[pc] = optimizer.followedCycles;
+            newJumpTargets[pc] = jumpTargets[pc];
+            if (jumpTargets[pc] >= 0 && jumpTargets[pc] < optimizer.size) {
+                newJumpTargets[pc] = optimizer.follow(jumpTargets[pc]);
+                jumpCycles[pc] = optimizer.followedCycles;
+            }
+        }
+        int entry = optimizer.follow(0);
+        return image.withFlow(newJumpTargets, fallTargets, jumpCycles, fallCycles, optimizer.skipped, entry, optimizer.followedCycles);
+    }
+
+    private void findSkipped() {
+        boolean[] jumpedTo = new boolean[size + 1];
+        for (int target : jumpTargets) {
+            if (target >= 0)
+                jumpedTo[target] = true;
+        }
+
+        // IF z != 0 GOTO L right after INC z always jumps, if nothing jumps to it
+        boolean[] alwaysJumps = new boolean[size];
+        for (int pc = 1; pc < size; pc++) {
+            alwaysJumps[pc] = ops[pc] instanceof OpJumpNotZero && ops[pc - 1] instanceof OpIncrease
+                    && ops[pc].getSlot() == ops[pc - 1].getSlot() && !jumpedTo[pc] && jumpsInside(pc);
+        }
+
+        boolean[] read = new boolean[slots.size()];
+        read[VariableSlots.RESULT_SLOT] = true;
+        for (int pc = 0; pc < size; pc++) {
+            if (!alwaysJumps[pc])
+                markRead(ops[pc], read);
+        }
+
+        for (int pc = 0; pc < size; pc++) {
+            AbstractOpBasic op = ops[pc];
+            if (alwaysJumps[pc] || op instanceof OpGoToLabel && jumpsInside(pc))
+                skip(pc, jumpTargets[pc], op);
+            else if (op instanceof OpNeutral)
+                skip(pc, pc + 1, op);
+            else if ((op instanceof OpIncrease || op instanceof OpDecrease) && !read[op.getSlot()])
+                skip(pc, pc + 1, op);
+        }
+    }
+
+    // a jump to an op of the program, a jump to EXIT halts and has to stay
+    private boolean jumpsInside(int pc) {
+        return jumpTargets[pc] >= 0 && jumpTargets[pc] < size
+                && ((LabelJumper) ops[pc]).getJumpLabel() != FixedLabel.EXIT;
+    }
+
+    private void skip(int pc, int to, AbstractOpBasic op) {
+        skipped[pc] = true;
+        next[pc] = to;
+        // a JNZ that jumps costs nothing
+        cost[pc] = op instanceof OpJumpNotZero ? 0 : op.getCycles();
+    }
+
+    private void markRead(AbstractOpBasic op, boolean[] read) {
+        if (op instanceof OpIncrease || op instanceof OpDecrease || op instanceof OpNeutral)
+            return; // they only read the variable they write
+        read[op.getSlot()] = true;
+        if (op instanceof VariableUser user)
+            markRead(user.getSecondaryVariable(), read);
+        if (op instanceof OpFunctionBase call && call.getArgs() != null)
+            markRead(call.getArgs(), read);
+    }
+
+    private void markRead(List<AbstractArgument> arguments, boolean[] read) {
+        for (AbstractArgument arg : arguments) {
+            if (arg instanceof VariableArgument variable)
+                markRead(variable.getVariable(), read);
+            else if (arg instanceof FunctionArgument function && function.getArgument() != null)
+                markRead(function.getArgument(), read);
+        }
+    }
+
+    private void markRead(VariableImpl variable, boolean[] read) {
+        int slot = slots.find(variable);
+        if (slot != VariableSlots.NO_SLOT)
+            read[slot] = true;
+    }
+
+    // skipped ops that only lead to each other (L: GOTO L) would never end, the first of each such cycle runs after all
+    private void breakSkippedCycles() {
+        int[] seen = new int[size];
+        for (int start = 0; start < size; start++) {
+            int pc = start;
+            while (pc >= 0 && pc < size && skipped[pc] && seen[pc] == 0) {
+                seen[pc] = start + 1;
+                pc = next[pc];
+            }
+            if (pc >= 0 && pc < size && skipped[pc] && seen[pc] == start + 1)
+                skipped[pc] = false;
+        }
+    }
+
+    // the first op from pc on that runs, followedCycles is left with what the skipped ones before it cost
+    private int follow(int pc) {
+        followedCycles = 0;
+        while (pc >= 0 && pc < size && skipped[pc]) {
+            if (keepCycles)
+                followedCycles += cost[pc];
+            pc = next[pc];
+        }
+        return pc;
+    }
+}
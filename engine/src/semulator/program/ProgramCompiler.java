@@ -0,0 +1,509 @@
+package semulator.program;
+
+import semulator.impl.api.basic.OpDecrease;
+import semulator.impl.api.basic.OpIncrease;
+import semulator.impl.api.basic.OpJumpNotZero;
+import semulator.impl.api.basic.OpNeutral;
+import semulator.impl.api.skeleton.AbstractOpBasic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns a program image of basic ops into a class of its own, loaded as a hidden class so the JIT
+ * compiles it like any other code. Every register is a local long, every op a few instructions
+ * at a branch target of its own and every counting loop (see LoopIdiom) is done in one go, as the
+ * interpreter does it. Cycles and steps are counted the way ProgramImage.run counts them.
+ * An image with a synthetic op, a function call or a jump to a label that is not there is not compiled,
+ * it runs in the interpreter.
+ */
+final class ProgramCompiler {
+
+    private static final String CLASS_NAME = "semulator/program/CompiledImage";
+    private static final String INTERFACE_NAME = "semulator/program/CompiledProgram";
+    private static final int MAX_CODE_LENGTH = 65535;
+    private static final int MAX_REGISTERS = 30000; // two locals each, a method has at most 65535
+
+    // locals of run(long[] registers, int[] exit), this is 0, registers 1 and exit 2
+    private static final int CYCLES = 3;
+    private static final int STEPS = 4; // a long, takes 4 and 5
+    private static final int STOP_PC = 6;
+    private static final int FIRST_REGISTER = 7;
+
+    // opcodes
+    private static final int ICONST_0 = 0x03, LCONST_0 = 0x09, LCONST_1 = 0x0a, BIPUSH = 0x10, SIPUSH = 0x11;
+    private static final int LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14, ILOAD = 0x15, LLOAD = 0x16, ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b, ALOAD_2 = 0x2c, LALOAD = 0x2f, ISTORE = 0x36, LSTORE = 0x37;
+    private static final int IASTORE = 0x4f, LASTORE = 0x50, IADD = 0x60, LADD = 0x61, LSUB = 0x65, LMUL = 0x69;
+    private static final int IINC = 0x84, L2I = 0x88, LCMP = 0x94, IFEQ = 0x99, IFNE = 0x9a, LRETURN = 0xad;
+    private static final int RETURN = 0xb1, INVOKESPECIAL = 0xb7, WIDE = 0xc4, GOTO_W = 0xc8;
+
+    private final AbstractOpBasic[] ops;
+    private final int[] jumpTargets;
+    private final int[] fallTargets;
+    private final int[] jumpCycles;
+    private final int[] fallCycles;
+    private final boolean[] skipped;
+    private final LoopIdiom[] loops;
+    private final int registerCount;
+    private final int size;
+
+    private final ConstantPool pool = new ConstantPool();
+    private final Code code = new Code();
+    private final int end; // the label of the end of the program
+    private final Map<Integer, Integer> halts = new HashMap<>(); // the label that stops at an op that jumps to EXIT
+
+    private ProgramCompiler(AbstractOpBasic[] ops, int[] jumpTargets, int[] fallTargets, int[] jumpCycles, int[] fallCycles,
+                            boolean[] skipped, LoopIdiom[] loops, int registerCount) {
+        this.ops = ops;
+        this.jumpTargets = jumpTargets;
+        this.fallTargets = fallTargets;
+        this.jumpCycles = jumpCycles;
+        this.fallCycles = fallCycles;
+        this.skipped = skipped;
+        this.loops = loops;
+        this.registerCount = registerCount;
+        size = ops.length;
+        for (int pc = 0; pc < size; pc++)
+            code.newLabel(); // the label of op pc is pc
+        end = code.newLabel();
+    }
+
+    // the compiled image, or null if it has to run in the interpreter
+    static CompiledProgram compile(AbstractOpBasic[] ops, int[] jumpTargets, int[] fallTargets, int[] jumpCycles, int[] fallCycles,
+                                   boolean[] skipped, LoopIdiom[] loops, int entry, int registerCount) {
+        ProgramCompiler compiler = new ProgramCompiler(ops, jumpTargets, fallTargets, jumpCycles, fallCycles, skipped, loops, registerCount);
+        if (registerCount > MAX_REGISTERS || !compiler.compilable(entry))
+            return null;
+        byte[] runCode = compiler.runCode(entry);
+        if (runCode.length > MAX_CODE_LENGTH)
+            return null;
+        byte[] classFile = compiler.classFile(runCode);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return (CompiledProgram) lookup.lookupClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // only basic ops, and every op a run gets to is in the program
+    private boolean compilable(int entry) {
+        if (!runs(entry))
+            return false;
+        for (int pc = 0; pc < size; pc++) {
+            if (skipped[pc])
+                continue;
+            AbstractOpBasic op = ops[pc];
+            if (!(op instanceof OpIncrease || op instanceof OpDecrease || op instanceof OpJumpNotZero || op instanceof OpNeutral))
+                return false;
+            if (!runs(fallTargets[pc]) || op instanceof OpJumpNotZero && !runs(jumpTargets[pc]))
+                return false;
+            if (loops[pc] != null && !runs(loops[pc].getExit()))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean runs(int target) {
+        return target == size || target >= 0 && target < size && !skipped[target];
+    }
+
+    private byte[] runCode(int entry) {
+        for (int register = 0; register < registerCount; register++) {
+            code.op(ALOAD_1);
+            pushInt(register);
+            code.op(LALOAD);
+            code.local(LSTORE, local(register));
+        }
+        code.op(ICONST_0);
+        code.local(ISTORE, CYCLES);
+        code.op(LCONST_0);
+        code.local(LSTORE, STEPS);
+        if (entry != nextOp(-1))
+            jumpTo(entry);
+
+        for (int pc = 0; pc < size; pc++) {
+            if (skipped[pc])
+                continue;
+            code.mark(pc);
+            if (loops[pc] != null)
+                loop(loops[pc], nextOp(pc));
+            else
+                op(pc, nextOp(pc));
+        }
+
+        code.mark(end);
+        pushInt(size);
+        code.local(ISTORE, STOP_PC);
+        int store = code.newLabel();
+        code.mark(store);
+        for (int register = 0; register < registerCount; register++) {
+            code.op(ALOAD_1);
+            pushInt(register);
+            code.local(LLOAD, local(register));
+            code.op(LASTORE);
+        }
+        code.op(ALOAD_2);
+        code.op(ICONST_0);
+        code.local(ILOAD, STOP_PC);
+        code.op(IASTORE);
+        code.op(ALOAD_2);
+        pushInt(1);
+        code.local(ILOAD, CYCLES);
+        code.op(IASTORE);
+        code.local(LLOAD, STEPS);
+        code.op(LRETURN);
+
+        for (Map.Entry<Integer, Integer> halt : halts.entrySet()) {
+            code.mark(halt.getValue());
+            pushInt(halt.getKey());
+            code.local(ISTORE, STOP_PC);
+            code.jump(GOTO_W, store);
+        }
+        return code.resolve();
+    }
+
+    private void op(int pc, int next) {
+        AbstractOpBasic op = ops[pc];
+        int register = local(op.getSlot());
+        if (op instanceof OpIncrease) {
+            code.local(LLOAD, register);
+            code.op(LCONST_1);
+            code.op(LADD);
+            code.local(LSTORE, register);
+        } else if (op instanceof OpDecrease) {
+            int zero = code.newLabel();
+            code.local(LLOAD, register);
+            code.op(LCONST_0);
+            code.op(LCMP);
+            code.jump(IFEQ, zero);
+            code.local(LLOAD, register);
+            code.op(LCONST_1);
+            code.op(LSUB);
+            code.local(LSTORE, register);
+            code.mark(zero);
+        } else if (op instanceof OpJumpNotZero) {
+            int zero = code.newLabel();
+            code.local(LLOAD, register);
+            code.op(LCONST_0);
+            code.op(LCMP);
+            code.jump(IFEQ, zero);
+            if (jumpTargets[pc] == size) {
+                code.jump(GOTO_W, halts.computeIfAbsent(pc, k -> code.newLabel())); // EXIT, the run stops at the op
+            } else {
+                addCycles(jumpCycles[pc]); // a jump that is taken costs nothing itself
+                countStep();
+                code.jump(GOTO_W, jumpTargets[pc]);
+            }
+            code.mark(zero);
+        }
+        addCycles(op.getCycles() + fallCycles[pc]);
+        countStep();
+        if (fallTargets[pc] != next)
+            jumpTo(fallTargets[pc]);
+    }
+
+    // what LoopIdiom.run does
+    private void loop(LoopIdiom loop, int next) {
+        int rounds = local(registerCount); // a temporary after the registers
+        int counter = local(loop.getCounterSlot());
+        int positive = code.newLabel();
+        code.local(LLOAD, counter);
+        code.local(LSTORE, rounds);
+        code.local(LLOAD, rounds);
+        code.op(LCONST_0);
+        code.op(LCMP);
+        code.jump(IFNE, positive);
+        code.op(LCONST_1);
+        code.local(LSTORE, rounds);
+        code.mark(positive);
+        for (int slot : loop.getIncrementSlots()) {
+            code.local(LLOAD, local(slot));
+            code.local(LLOAD, rounds);
+            code.op(LADD);
+            code.local(LSTORE, local(slot));
+        }
+        code.op(LCONST_0);
+        code.local(LSTORE, counter);
+
+        code.local(ILOAD, CYCLES);
+        code.local(LLOAD, rounds);
+        pushLong(loop.getBodyCycles());
+        code.op(LMUL);
+        pushLong(loop.getExitCycles());
+        code.op(LADD);
+        code.op(L2I);
+        code.op(IADD);
+        code.local(ISTORE, CYCLES);
+
+        code.local(LLOAD, STEPS);
+        code.local(LLOAD, rounds);
+        pushLong(loop.getRoundSteps());
+        code.op(LMUL);
+        code.op(LADD);
+        code.local(LSTORE, STEPS);
+        if (loop.getExit() != next)
+            jumpTo(loop.getExit());
+    }
+
+    private void jumpTo(int target) {
+        code.jump(GOTO_W, target == size ? end : target);
+    }
+
+    // the first op after pc the code has, the end if there is none
+    private int nextOp(int pc) {
+        int next = pc + 1;
+        while (next < size && skipped[next])
+            next++;
+        return next;
+    }
+
+    private void addCycles(int cycles) {
+        if (cycles == 0)
+            return;
+        if (cycles <= Byte.MAX_VALUE) {
+            code.op(IINC);
+            code.u1(CYCLES);
+            code.u1(cycles);
+            return;
+        }
+        if (cycles <= Short.MAX_VALUE) {
+            code.op(WIDE);
+            code.op(IINC);
+            code.u2(CYCLES);
+            code.u2(cycles);
+            return;
+        }
+        code.local(ILOAD, CYCLES);
+        pushInt(cycles);
+        code.op(IADD);
+        code.local(ISTORE, CYCLES);
+    }
+
+    private void countStep() {
+        code.local(LLOAD, STEPS);
+        code.op(LCONST_1);
+        code.op(LADD);
+        code.local(LSTORE, STEPS);
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            code.op(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.op(BIPUSH);
+            code.u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.op(SIPUSH);
+            code.u2(value);
+        } else {
+            int index = pool.integer(value);
+            if (index < 256) {
+                code.op(LDC);
+                code.u1(index);
+            } else {
+                code.op(LDC_W);
+                code.u2(index);
+            }
+        }
+    }
+
+    private void pushLong(long value) {
+        if (value == 0 || value == 1) {
+            code.op(value == 0 ? LCONST_0 : LCONST_1);
+            return;
+        }
+        code.op(LDC2_W);
+        code.u2(pool.longValue(value));
+    }
+
+    private static int local(int slot) {
+        return FIRST_REGISTER + 2 * slot;
+    }
+
+    private byte[] classFile(byte[] runCode) {
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int interfaceClass = pool.classRef(INTERFACE_NAME);
+        int objectInit = pool.methodRef(superClass, "<init>", "()V");
+        int initName = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int runName = pool.utf8("run");
+        int runType = pool.utf8("([J[I)J");
+        int codeName = pool.utf8("Code");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49); // Java 5, verified without stack maps
+            pool.write(out);
+            out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+            out.writeShort(0); // fields
+            out.writeShort(2);
+
+            byte[] initCode = {(byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN};
+            writeMethod(out, initName, initType, codeName, 1, 1, initCode);
+            writeMethod(out, runName, runType, codeName, 8, local(registerCount) + 2, runCode);
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int type, int codeName, int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(0x0001); // public
+        out.writeShort(name);
+        out.writeShort(type);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    // the bytes of a method, with labels that are resolved once all of it is written
+    private static final class Code {
+        private byte[] bytes = new byte[1024];
+        private int length;
+        private int[] labels = new int[64];
+        private int labelCount;
+        private final List<int[]> jumps = new ArrayList<>(); // {where the jump is, where its offset goes, label, offset bytes}
+
+        int newLabel() {
+            if (labelCount == labels.length)
+                labels = Arrays.copyOf(labels, labelCount * 2);
+            labels[labelCount] = -1;
+            return labelCount++;
+        }
+
+        void mark(int label) {
+            labels[label] = length;
+        }
+
+        void op(int opcode) {
+            u1(opcode);
+        }
+
+        // an instruction on a local, wide if the local is past 255
+        void local(int opcode, int index) {
+            if (index > 255) {
+                u1(WIDE);
+                u1(opcode);
+                u2(index);
+            } else {
+                u1(opcode);
+                u1(index);
+            }
+        }
+
+        // goto_w takes a 4 byte offset, every other jump a 2 byte one and is only used for labels close by
+        void jump(int opcode, int label) {
+            int at = length;
+            u1(opcode);
+            int width = opcode == GOTO_W ? 4 : 2;
+            jumps.add(new int[]{at, length, label, width});
+            for (int i = 0; i < width; i++)
+                u1(0);
+        }
+
+        void u1(int value) {
+            if (length == bytes.length)
+                bytes = Arrays.copyOf(bytes, length * 2);
+            bytes[length++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        byte[] resolve() {
+            for (int[] jump : jumps) {
+                int offset = labels[jump[2]] - jump[0];
+                if (jump[3] == 4) {
+                    bytes[jump[1]] = (byte) (offset >> 24);
+                    bytes[jump[1] + 1] = (byte) (offset >> 16);
+                    bytes[jump[1] + 2] = (byte) (offset >> 8);
+                    bytes[jump[1] + 3] = (byte) offset;
+                } else {
+                    bytes[jump[1]] = (byte) (offset >> 8);
+                    bytes[jump[1] + 1] = (byte) offset;
+                }
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(entries);
+        private final Map<Object, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String text) {
+            return add("u" + text, 1, () -> { out.writeByte(1); out.writeUTF(text); });
+        }
+
+        int classRef(String name) {
+            int nameIndex = utf8(name);
+            return add("c" + name, 1, () -> { out.writeByte(7); out.writeShort(nameIndex); });
+        }
+
+        int methodRef(int owner, String name, String type) {
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(type);
+            int nameAndType = add("n" + name + type, 1, () -> { out.writeByte(12); out.writeShort(nameIndex); out.writeShort(typeIndex); });
+            return add("m" + owner + name + type, 1, () -> { out.writeByte(10); out.writeShort(owner); out.writeShort(nameAndType); });
+        }
+
+        int integer(int value) {
+            return add(value, 1, () -> { out.writeByte(3); out.writeInt(value); });
+        }
+
+        int longValue(long value) {
+            return add(value, 2, () -> { out.writeByte(5); out.writeLong(value); }); // a long takes two entries
+        }
+
+        private int add(Object key, int entrySize, Entry entry) {
+            Integer index = indexes.get(key);
+            if (index != null)
+                return index;
+            try {
+                entry.write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            indexes.put(key, count);
+            count += entrySize;
+            return count - entrySize;
+        }
+
+        void write(DataOutputStream to) throws IOException {
+            to.writeShort(count);
+            to.write(entries.toByteArray());
+        }
+
+        private interface Entry {
+            void write() throws IOException;
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package semulator.program;
+
+import semulator.execution.ArgumentEvaluation;
+import semulator.execution.ExecutionState;
+import semulator.execution.TraceSink;
+import semulator.impl.api.skeleton.AbstractOpBasic;
+import semulator.impl.api.skeleton.LabelJumper;
+import semulator.impl.api.synthetic.OpFunctionBase;
+import semulator.label.FixedLabel;
+import semulator.label.Label;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flat, index addressed form of a program that never changes once it is built.
+ * Every jump label is resolved to a program counter and every function call to the function it runs,
+ * so the run loop never has to look anything up. An image has copies of the program's ops of its own,
+ * bound to the register slots of its variables, so no image rebinds the ops of another. All that changes during a run is kept in an ExecutionState, so any number
+ * of threads can run the same image at once.
+ * Counting loops of basic ops are found when the image is built, a run that does not report
+ * every step runs each of them in one go instead of round by round.
+ * An optimized image (see PeepholeOptimizer) has the same ops at the same pcs, its jumps and fall throughs
+ * just pass over the ops it skips, and work variables that are never in use at the same time share a register
+ * (see WorkSlotAllocator). An image of basic ops can also be compiled to JVM code (see ProgramCompiler),
+ * a run that does not report every step then runs that instead, or it can run a basic block at a time (see BasicBlock).
+ */
+public final class ProgramImage {
+
+    public static final int UNRESOLVED = -1; // jump to a label that is not defined in the program
+    public static final int HALTED = -2; // the op jumped to EXIT
+
+    private final String name;
+    private final AbstractOpBasic[] ops;
+    private final int[] jumpTargets;
+    private final boolean[] functionCalls;
+    private final FunctionExecutor[] callees; // the function each call op runs, null for any other op
+    private final int[] inputSlots;
+    private final VariableSlots slots; // a copy nobody adds to, registerCount is its size
+    private final List<VariableImpl> variables; // what a snapshot of a run shows
+    private final int[] variableSlots;
+    private final int[] fallTargets; // where an op that does not jump goes on, the next op unless it is skipped
+    private final int[] jumpCycles; // cycles of skipped ops charged on the way of a jump
+    private final int[] fallCycles; // and of a fall through
+    private final boolean[] skipped; // ops a run never gets to
+    private final int entry;
+    private final int entryCycles;
+    private final LoopIdiom[] loops; // the loop that starts at an op, null where none does
+    private final CompiledProgram compiled; // what run does instead of interpreting the ops, null if it interprets them
+    private final BasicBlock[] blocks; // the block that starts at an op, null where none does or for an image that runs op by op
+
+    private ProgramImage(String name, AbstractOpBasic[] ops, int[] jumpTargets, boolean[] functionCalls, FunctionExecutor[] callees,
+                         int[] inputSlots, VariableSlots slots, List<VariableImpl> variables, int[] variableSlots) {
+        this.name = name;
+        this.ops = ops;
+        this.jumpTargets = jumpTargets;
+        this.functionCalls = functionCalls;
+        this.callees = callees;
+        this.inputSlots = inputSlots;
+        this.slots = slots;
+        this.variables = variables;
+        this.variableSlots = variableSlots;
+        fallTargets = new int[ops.length];
+        for (int pc = 0; pc < ops.length; pc++)
+            fallTargets[pc] = pc + 1;
+        jumpCycles = new int[ops.length];
+        fallCycles = new int[ops.length];
+        skipped = new boolean[ops.length];
+        entry = 0;
+        entryCycles = 0;
+        loops = findLoops();
+        compiled = null;
+        blocks = null;
+    }
+
+    private ProgramImage(ProgramImage image, int[] jumpTargets, int[] fallTargets, int[] jumpCycles, int[] fallCycles,
+                         boolean[] skipped, int entry, int entryCycles) {
+        name = image.name;
+        ops = image.ops;
+        this.jumpTargets = jumpTargets;
+        functionCalls = image.functionCalls;
+        callees = image.callees;
+        inputSlots = image.inputSlots;
+        slots = image.slots;
+        variables = image.variables;
+        variableSlots = image.variableSlots;
+        this.fallTargets = fallTargets;
+        this.jumpCycles = jumpCycles;
+        this.fallCycles = fallCycles;
+        this.skipped = skipped;
+        this.entry = entry;
+        this.entryCycles = entryCycles;
+        loops = findLoops();
+        compiled = null;
+        blocks = null;
+    }
+
+    // the image with its ops bound to the registers in storage, see WorkSlotAllocator
+    private ProgramImage(ProgramImage image, int[] storage) {
+        name = image.name;
+        jumpTargets = image.jumpTargets;
+        functionCalls = image.functionCalls;
+        callees = image.callees;
+        slots = new VariableSlots(image.slots, storage);
+        ops = boundCopies(image.ops, slots);
+        inputSlots = new int[image.inputSlots.length];
+        for (int i = 0; i < inputSlots.length; i++)
+            inputSlots[i] = storage[image.inputSlots[i]];
+        variables = image.variables;
+        variableSlots = new int[image.variableSlots.length];
+        for (int i = 0; i < variableSlots.length; i++)
+            variableSlots[i] = storage[image.variableSlots[i]];
+        fallTargets = image.fallTargets;
+        jumpCycles = image.jumpCycles;
+        fallCycles = image.fallCycles;
+        skipped = image.skipped;
+        entry = image.entry;
+        entryCycles = image.entryCycles;
+        loops = findLoops();
+        compiled = null;
+        blocks = null;
+    }
+
+    private ProgramImage(ProgramImage image, CompiledProgram compiled, BasicBlock[] blocks) {
+        name = image.name;
+        ops = image.ops;
+        jumpTargets = image.jumpTargets;
+        functionCalls = image.functionCalls;
+        callees = image.callees;
+        inputSlots = image.inputSlots;
+        slots = image.slots;
+        variables = image.variables;
+        variableSlots = image.variableSlots;
+        fallTargets = image.fallTargets;
+        jumpCycles = image.jumpCycles;
+        fallCycles = image.fallCycles;
+        skipped = image.skipped;
+        entry = image.entry;
+        entryCycles = image.entryCycles;
+        loops = image.loops;
+        this.compiled = compiled;
+        this.blocks = blocks;
+    }
+
+    public static ProgramImage of(FunctionExecutorImpl program) {
+        List<AbstractOpBasic> opList = program.getOps();
+        VariableSlots programSlots = program.getSlots();
+        AbstractOpBasic[] ops = boundCopies(opList.toArray(new AbstractOpBasic[0]), programSlots);
+        int size = ops.length;
+        List<VariableImpl> inputVars = program.getInputVar();
+        int[] inputSlots = new int[inputVars.size()];
+        for (int i = 0; i < inputSlots.length; i++)
+            inputSlots[i] = programSlots.slotOf(inputVars.get(i));
+        List<VariableImpl> variables = List.copyOf(program.snapVariables());
+        int[] variableSlots = new int[variables.size()];
+        for (int i = 0; i < variableSlots.length; i++)
+            variableSlots[i] = programSlots.slotOf(variables.get(i));
+
+        Map<Label, Integer> labelIndex = new HashMap<>();
+        for (int pc = 0; pc < size; pc++) {
+            Label label = ops[pc].getLabel();
+            if (label != null && label != FixedLabel.EMPTY && label != FixedLabel.EXIT)
+                labelIndex.putIfAbsent(label, pc);
+        }
+
+        int[] jumpTargets = new int[size];
+        boolean[] functionCalls = new boolean[size];
+        FunctionExecutor[] callees = new FunctionExecutor[size];
+        for (int pc = 0; pc < size; pc++) {
+            jumpTargets[pc] = UNRESOLVED;
+            if (ops[pc] instanceof LabelJumper jumper) {
+                Label target = jumper.getJumpLabel();
+                if (target == FixedLabel.EXIT)
+                    jumpTargets[pc] = size;
+                else
+                    jumpTargets[pc] = labelIndex.getOrDefault(target, UNRESOLVED);
+            }
+            if (ops[pc] instanceof OpFunctionBase call) {
+                functionCalls[pc] = true;
+                callees[pc] = call.getFunction();
+            }
+        }
+        return new ProgramImage(program.getName(), ops, jumpTargets, functionCalls, callees,
+                inputSlots, new VariableSlots(programSlots), variables, variableSlots);
+    }
+
+    private static AbstractOpBasic[] boundCopies(AbstractOpBasic[] ops, VariableSlots slots) {
+        AbstractOpBasic[] copies = new AbstractOpBasic[ops.length];
+        for (int pc = 0; pc < ops.length; pc++)
+            copies[pc] = ops[pc].boundCopy(slots);
+        return copies;
+    }
+
+    // the image with the ops optimization lets a run skip and the work variables that share registers,
+    // this image itself for NONE
+    public ProgramImage optimized(Optimization optimization) {
+        if (optimization == Optimization.NONE)
+            return this;
+        return PeepholeOptimizer.optimize(this, ops, jumpTargets, slots, optimization).withSharedSlots();
+    }
+
+    private ProgramImage withSharedSlots() {
+        int[] storage = WorkSlotAllocator.allocate(ops, jumpTargets, fallTargets, skipped, entry, slots);
+        return storage == null ? this : new ProgramImage(this, storage);
+    }
+
+    // the image that runs with strategy, this image itself if it can't (COMPILED needs basic ops only)
+    public ProgramImage using(ExecutionStrategy strategy) {
+        if (compiled != null || blocks != null)
+            return this;
+        switch (strategy) {
+            case BLOCKS:
+                return new ProgramImage(this, null, BasicBlock.of(ops, jumpTargets, fallTargets, fallCycles, skipped, loops, entry));
+            case COMPILED:
+                CompiledProgram program = ProgramCompiler.compile(ops, jumpTargets, fallTargets, jumpCycles, fallCycles,
+                        skipped, loops, entry, getRegisterCount());
+                return program == null ? this : new ProgramImage(this, program, null);
+            default:
+                return this;
+        }
+    }
+
+    ProgramImage withFlow(int[] jumpTargets, int[] fallTargets, int[] jumpCycles, int[] fallCycles,
+                          boolean[] skipped, int entry, int entryCycles) {
+        return new ProgramImage(this, jumpTargets, fallTargets, jumpCycles, fallCycles, skipped, entry, entryCycles);
+    }
+
+    // a loop only runs in one go if nothing of it is skipped
+    private LoopIdiom[] findLoops() {
+        int size = ops.length;
+        LoopIdiom[] found = new LoopIdiom[size];
+        for (int back = 0; back < size; back++) {
+            int head = jumpTargets[back];
+            if (head < 0 || head >= back || found[head] != null || skipped[back] || jumpCycles[back] != 0)
+                continue;
+            boolean plain = true;
+            for (int pc = head; pc < back && plain; pc++)
+                plain = !skipped[pc] && fallTargets[pc] == pc + 1 && fallCycles[pc] == 0;
+            if (plain)
+                found[head] = LoopIdiom.of(ops, head, back, fallTargets[back], fallCycles[back]);
+        }
+        return found;
+    }
+
+    // a fresh state with the inputs loaded, the inputs past the program's input count are ignored, missing ones are 0
+    public ExecutionState newState(long[] inputs, ArgumentEvaluation argumentEvaluation) {
+        ExecutionState state = new ExecutionState(slots, getRegisterCount(), argumentEvaluation);
+        load(state, inputs);
+        return state;
+    }
+
+    public void enter(ExecutionState state, long[] inputs, ArgumentEvaluation argumentEvaluation) {
+        state.enter(getRegisterCount(), argumentEvaluation);
+        load(state, inputs);
+    }
+
+    private void load(ExecutionState state, long[] inputs) {
+        for (int i = 0; i < inputSlots.length && i < inputs.length; i++)
+            state.set(inputSlots[i], inputs[i]);
+        state.setPc(entry);
+        state.increaseCycleCounter(entryCycles);
+    }
+
+    // runs to the end without telling anyone about the steps, returns how many steps it took
+    public long run(ExecutionState state, List<FunctionExecutor> functions) {
+        int size = ops.length;
+        if (compiled != null && state.getPc() == entry) {
+            int[] exit = new int[2];
+            long steps = compiled.run(state.getRegisters(), exit);
+            state.setPc(exit[0]);
+            state.increaseCycleCounter(exit[1]);
+            return steps;
+        }
+        long steps = 0;
+        while (state.getPc() < size) {
+            LoopIdiom loop = loops[state.getPc()];
+            if (loop != null) {
+                steps += loop.run(state);
+                continue;
+            }
+            if (blocks != null && blocks[state.getPc()] != null) {
+                steps += blocks[state.getPc()].run(state);
+                continue;
+            }
+            if (executeStep(state, functions) == HALTED)
+                break;
+            steps++;
+        }
+        return steps;
+    }
+
+    public void run(ExecutionState state, List<FunctionExecutor> functions, TraceSink sink) {
+        int size = ops.length;
+        long step = 0;
+
+        if (!sink.tracesSteps()) {
+            sink.start(state.getPc() < size ? state.getPc() : -1, state);
+            step = run(state, functions);
+            sink.finish(step, state.getPc() < size ? state.getPc() : -1, state);
+            return;
+        }
+
+        // put init state
+        sink.start(state.getPc() < size ? state.getPc() : -1, state);
+
+        while (state.getPc() < size) {
+            int slot = ops[state.getPc()].getSlot();
+            int next = executeStep(state, functions);
+            if (next == HALTED)
+                break;
+            sink.step(++step, next < size ? next : -1, slot, state);
+        }
+        sink.finish(step, state.getPc() < size ? state.getPc() : -1, state);
+    }
+
+    // runs at degree 0, but every synthetic op is charged the cycles its expansion to the model's degree takes
+    public void run(ExecutionState state, List<FunctionExecutor> functions, CycleModel model) {
+        int degree = model.getDegree();
+        if (degree == 0) {
+            run(state, functions);
+            return;
+        }
+        int size = ops.length;
+        while (state.getPc() < size) {
+            int pc = state.getPc();
+            if (loops[pc] != null) { // only basic ops, they cost the same at every degree
+                loops[pc].run(state);
+                continue;
+            }
+            AbstractOpBasic current = ops[pc];
+            Label next;
+            if (functionCalls[pc]) {
+                next = ((OpFunctionBase) current).execute(state, functions, callees[pc], model.child(pc, degree));
+            } else if (current.getDegree() == 0) {
+                next = current.execute(state);
+            } else {
+                int cycles = current.getExpandedCycles(state, degree, model.hidden(pc, current.getHiddenCount()));
+                int charged = state.getCycles();
+                next = current.execute(state);
+                state.increaseCycleCounter(cycles - (state.getCycles() - charged));
+            }
+            if (moveTo(state, pc, next) == HALTED)
+                break;
+        }
+    }
+
+    // runs the op at the state's pc and moves the state to the op that runs next.
+    // returns that pc, or HALTED if the op jumped to EXIT (the state then stays at the op)
+    public int executeStep(ExecutionState state, List<FunctionExecutor> functions) {
+        int pc = state.getPc();
+        AbstractOpBasic current = ops[pc];
+        Label next;
+        if (functionCalls[pc])
+            next = ((OpFunctionBase) current).execute(state, functions, callees[pc]);
+        else
+            next = current.execute(state);
+        return moveTo(state, pc, next);
+    }
+
+    private int moveTo(ExecutionState state, int pc, Label next) {
+        if (next == FixedLabel.EXIT)
+            return HALTED;
+
+        int target;
+        if (next == FixedLabel.EMPTY) {
+            target = fallTargets[pc];
+            state.increaseCycleCounter(fallCycles[pc]);
+        } else {
+            target = jumpTargets[pc];
+            state.increaseCycleCounter(jumpCycles[pc]);
+        }
+        if (target == UNRESOLVED) {
+            throw new IllegalStateException(
+                    "Jump to undefined label: " + next.getLabelRepresentation());
+        }
+        state.setPc(target);
+        return target;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return ops.length;
+    }
+
+    public AbstractOpBasic getOp(int pc) {
+        return ops[pc];
+    }
+
+    public int getJumpTarget(int pc) {
+        return jumpTargets[pc];
+    }
+
+    // an op the optimized image passes over, it still has its pc so a display can show it as skipped
+    public boolean isSkipped(int pc) {
+        return skipped[pc];
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    public boolean isFunctionCall(int pc) {
+        return functionCalls[pc];
+    }
+
+    public int getInputCount() {
+        return inputSlots.length;
+    }
+
+    public int getInputSlot(int index) {
+        return inputSlots[index];
+    }
+
+    // registers a run of the program needs, every variable it uses has a slot below this
+    public int getRegisterCount() {
+        return slots.size();
+    }
+
+    public VariableSlots getSlots() {
+        return slots;
+    }
+
+    public List<VariableImpl> getVariables() {
+        return variables;
+    }
+
+    public int getVariableSlot(int index) {
+        return variableSlots[index];
+    }
+
+    public int[] getVariableSlots() {
+        return variableSlots.clone();
+    }
+}
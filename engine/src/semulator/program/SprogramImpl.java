@@ -17,27 +17,17 @@ public class SprogramImpl extends FunctionExecutorImpl {
         if (functions == null)
             functions = new ArrayList<>();
         functions.add(func);
+        func.setFunctionScope(functions);
     };
 
     public void setFunctions(List <FunctionExecutor> functions)                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                    {
         this.functions = functions;
+        functions.forEach(func -> func.setFunctionScope(functions));
     }
 
     public List <FunctionExecutor> getFunctions(){ return  functions;}
 
-    @Override
-    public int calculateCycles() {
-
-        if (functions != null) {
-            functions.forEach(func->{
-                cycles += func.calculateCycles();
-            });
-        }
-        return cycles;
-    }
-
     public void reset() {
-        this.cycles = 0;
         this.opListIndex = 0;
         context.reset();
         if (functions != null) {
@@ -77,6 +67,8 @@ public class SprogramImpl extends FunctionExecutorImpl {
         newProgram.setContext(context);
         newProgram.addLabelSet(new LinkedHashSet<>(this.labelsHashSet));
         newProgram.origVariables = new HashSet<>(this.origVariables);
+        newProgram.optimization = optimization;
+        newProgram.strategy = strategy;
 
         if (functions != null) {
             functions.forEach(func->{
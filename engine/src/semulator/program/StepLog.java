@@ -0,0 +1,140 @@
+package semulator.program;
+
+import semulator.execution.ExecutionState;
+import semulator.impl.api.basic.OpDecrease;
+import semulator.impl.api.basic.OpIncrease;
+import semulator.impl.api.basic.OpJumpNotZero;
+import semulator.impl.api.basic.OpNeutral;
+import semulator.impl.api.skeleton.AbstractOpBasic;
+import semulator.variable.VariableSlots;
+
+import java.util.Arrays;
+
+/**
+ * What it takes to run the steps of a run backwards, a few bytes a step.
+ * An increase is undone by a decrease and the other way around, so a step of a basic op only keeps
+ * the op it ran and one bit: whether a decrease found its variable at 0, or whether a jump was taken.
+ * The cycles it charged follow from that. Any other op keeps the value it overwrote and the cycles it charged.
+ * Every record ends with its length, so the log is read back from its end.
+ */
+final class StepLog {
+
+    private static final int FLAG = 1;      // a decrease found 0, a jump was taken
+    private static final int OVERWRITE = 2; // the value and the cycles follow
+    private static final int MAX_BYTES = Integer.MAX_VALUE - 8;
+
+    private byte[] bytes = new byte[1 << 12];
+    private int length;
+    private long records;
+
+    // logs the op at pc that found before in its variable and charged cycles
+    void record(AbstractOpBasic op, int pc, long before, int cycles) {
+        int start = length;
+        if (op instanceof OpIncrease || op instanceof OpNeutral) {
+            if (cycles == op.getCycles()) {
+                writeHeader(pc, 0);
+            } else {
+                writeOverwrite(pc, before, cycles);
+            }
+        } else if (op instanceof OpDecrease) {
+            if (cycles == op.getCycles()) {
+                writeHeader(pc, before == 0 ? FLAG : 0);
+            } else {
+                writeOverwrite(pc, before, cycles);
+            }
+        } else if (op instanceof OpJumpNotZero) {
+            boolean jumped = before != 0;
+            if (cycles == (jumped ? 0 : op.getCycles())) {
+                writeHeader(pc, jumped ? FLAG : 0);
+            } else {
+                writeOverwrite(pc, before, cycles);
+            }
+        } else {
+            writeOverwrite(pc, before, cycles);
+        }
+        writeByte(length - start);
+        records++;
+    }
+
+    // undoes the last step logged and leaves the state at the op it ran
+    void undo(ProgramImage image, ExecutionState state) {
+        if (records == 0)
+            throw new IllegalStateException("no step to undo");
+        int end = length - 1;
+        int start = end - (bytes[end] & 0xFF);
+        int[] cursor = { start };
+        long header = readVarLong(cursor);
+        int pc = (int) (header >>> 2);
+        AbstractOpBasic op = image.getOp(pc);
+        int slot = op.getSlot();
+
+        if ((header & OVERWRITE) != 0) {
+            long before = readVarLong(cursor);
+            int cycles = (int) readVarLong(cursor);
+            if (slot != VariableSlots.NO_SLOT)
+                state.set(slot, before);
+            state.increaseCycleCounter(-cycles);
+        } else {
+            boolean flag = (header & FLAG) != 0;
+            if (op instanceof OpIncrease) {
+                state.set(slot, state.get(slot) - 1);
+            } else if (op instanceof OpDecrease && !flag) {
+                state.set(slot, state.get(slot) + 1);
+            }
+            boolean jumped = op instanceof OpJumpNotZero && flag;
+            state.increaseCycleCounter(jumped ? 0 : -op.getCycles());
+        }
+        state.setPc(pc);
+        length = start;
+        records--;
+    }
+
+    long size() {
+        return records;
+    }
+
+    // bytes the log takes so far
+    long bytes() {
+        return length;
+    }
+
+    private void writeHeader(int pc, int flags) {
+        writeVarLong(((long) pc << 2) | flags);
+    }
+
+    private void writeOverwrite(int pc, long before, int cycles) {
+        writeHeader(pc, OVERWRITE);
+        writeVarLong(before);
+        writeVarLong(cycles & 0xFFFFFFFFL);
+    }
+
+    // seven bits a byte, the high bit says another byte follows
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    private long readVarLong(int[] cursor) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[cursor[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private void writeByte(int b) {
+        if (length == bytes.length) {
+            if (length == MAX_BYTES)
+                throw new IllegalStateException("the run is too long to step back over");
+            bytes = Arrays.copyOf(bytes, (int) Math.min(MAX_BYTES, 2L * length));
+        }
+        bytes[length++] = (byte) b;
+    }
+}
@@ -0,0 +1,227 @@
+package semulator.program;
+
+import semulator.impl.api.basic.OpDecrease;
+import semulator.impl.api.basic.OpJumpNotZero;
+import semulator.impl.api.basic.OpNeutral;
+import semulator.impl.api.skeleton.AbstractOpBasic;
+import semulator.impl.api.skeleton.LabelJumper;
+import semulator.impl.api.skeleton.VariableUser;
+import semulator.impl.api.skeleton.functionArgs.AbstractArgument;
+import semulator.impl.api.skeleton.functionArgs.FunctionArgument;
+import semulator.impl.api.skeleton.functionArgs.VariableArgument;
+import semulator.impl.api.synthetic.OpFunctionBase;
+import semulator.impl.api.synthetic.OpGoToLabel;
+import semulator.impl.api.synthetic.OpJumpZero;
+import semulator.impl.api.synthetic.OpZeroVariable;
+import semulator.variable.VariableImpl;
+import semulator.variable.VariableSlots;
+import semulator.variable.VariableType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Lets work variables that are never in use at the same time share a register.
+ * Expansion leaves its work variables at 0 once it is done with them (a transfer loop counts its
+ * z back down, a fall through of IF z != 0 GOTO L leaves z at 0), so the ops that touch a work variable
+ * only ever see the others of its register at 0. Which variables are surely 0 before every op is found
+ * over the jumps and fall throughs of the image, two work variables may share a register if no op touches
+ * one of them while the other may not be 0. The register then always holds the one that is not 0,
+ * and every op, every loop run in one go and every cycle count sees the values it would have seen alone.
+ * Only a variable that is idle shows the value of the one it shares its register with.
+ */
+final class WorkSlotAllocator {
+
+    private final AbstractOpBasic[] ops;
+    private final int[] jumpTargets;
+    private final int[] fallTargets;
+    private final boolean[] skipped;
+    private final VariableSlots slots;
+    private final int size;
+
+    private final int[] candidates; // the slot of every work variable, a variable's index in here is its bit in a BitSet
+    private final int[] candidateOf; // and back, -1 for y and the inputs
+
+    private WorkSlotAllocator(AbstractOpBasic[] ops, int[] jumpTargets, int[] fallTargets, boolean[] skipped, VariableSlots slots) {
+        this.ops = ops;
+        this.jumpTargets = jumpTargets;
+        this.fallTargets = fallTargets;
+        this.skipped = skipped;
+        this.slots = slots;
+        size = ops.length;
+
+        candidateOf = new int[slots.size()];
+        List<Integer> found = new ArrayList<>();
+        for (int slot = 0; slot < slots.size(); slot++) {
+            candidateOf[slot] = -1;
+            if (slot != VariableSlots.RESULT_SLOT && slots.getVariable(slot).getType() == VariableType.WORK) {
+                candidateOf[slot] = found.size();
+                found.add(slot);
+            }
+        }
+        candidates = found.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // the register every slot moves to, or null if no two work variables can share one
+    static int[] allocate(AbstractOpBasic[] ops, int[] jumpTargets, int[] fallTargets, boolean[] skipped, int entry, VariableSlots slots) {
+        WorkSlotAllocator allocator = new WorkSlotAllocator(ops, jumpTargets, fallTargets, skipped, slots);
+        if (allocator.candidates.length < 2)
+            return null;
+        BitSet[] zeroBefore = allocator.findZeros(entry);
+        BitSet[] conflicts = allocator.findConflicts(zeroBefore);
+        return allocator.assign(conflicts);
+    }
+
+    // the work variables surely 0 before every op, null for an op no run gets to
+    private BitSet[] findZeros(int entry) {
+        BitSet[] zeroBefore = new BitSet[size];
+        if (entry < 0 || entry >= size)
+            return zeroBefore;
+        BitSet all = new BitSet();
+        all.set(0, candidates.length); // every register is 0 when a run starts
+        zeroBefore[entry] = all;
+
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        boolean[] queued = new boolean[size];
+        work.add(entry);
+        queued[entry] = true;
+        while (!work.isEmpty()) {
+            int pc = work.poll();
+            queued[pc] = false;
+            AbstractOpBasic op = ops[pc];
+            int candidate = candidateOf(op.getSlot());
+
+            BitSet after = (BitSet) zeroBefore[pc].clone();
+            if (candidate >= 0) {
+                if (op instanceof OpZeroVariable)
+                    after.set(candidate);
+                else if (!(op instanceof OpDecrease || op instanceof OpNeutral || op instanceof LabelJumper))
+                    after.clear(candidate); // a decrease stops at 0 and jumps change nothing
+            }
+
+            if (!(op instanceof OpGoToLabel)) {
+                BitSet fall = after;
+                if (op instanceof OpJumpNotZero && candidate >= 0) {
+                    fall = (BitSet) after.clone();
+                    fall.set(candidate);
+                }
+                flow(fall, fallTargets[pc], zeroBefore, work, queued);
+            }
+            if (op instanceof LabelJumper) {
+                BitSet jump = after;
+                if (op instanceof OpJumpZero && candidate >= 0) {
+                    jump = (BitSet) after.clone();
+                    jump.set(candidate);
+                }
+                flow(jump, jumpTargets[pc], zeroBefore, work, queued);
+            }
+        }
+        return zeroBefore;
+    }
+
+    private void flow(BitSet zeros, int target, BitSet[] zeroBefore, ArrayDeque<Integer> work, boolean[] queued) {
+        if (target < 0 || target >= size)
+            return; // EXIT, the end of the program or a label that is not there
+        BitSet known = zeroBefore[target];
+        if (known == null) {
+            zeroBefore[target] = (BitSet) zeros.clone();
+        } else {
+            int before = known.cardinality();
+            known.and(zeros);
+            if (known.cardinality() == before)
+                return;
+        }
+        if (!queued[target]) {
+            queued[target] = true;
+            work.add(target);
+        }
+    }
+
+    // work variables that may not share a register: one is touched while the other may not be 0
+    private BitSet[] findConflicts(BitSet[] zeroBefore) {
+        BitSet[] conflicts = new BitSet[candidates.length];
+        for (int i = 0; i < candidates.length; i++)
+            conflicts[i] = new BitSet();
+        BitSet touched = new BitSet();
+        for (int pc = 0; pc < size; pc++) {
+            if (zeroBefore[pc] == null || skipped[pc])
+                continue;
+            touched.clear();
+            touch(ops[pc], touched);
+            if (touched.isEmpty())
+                continue;
+            BitSet busy = (BitSet) zeroBefore[pc].clone();
+            busy.flip(0, candidates.length);
+            for (int t = touched.nextSetBit(0); t >= 0; t = touched.nextSetBit(t + 1)) {
+                for (int u = busy.nextSetBit(0); u >= 0; u = busy.nextSetBit(u + 1)) {
+                    if (u != t) {
+                        conflicts[t].set(u);
+                        conflicts[u].set(t);
+                    }
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    // the work variables an op reads or writes
+    private void touch(AbstractOpBasic op, BitSet touched) {
+        if (op instanceof OpNeutral || op instanceof OpGoToLabel)
+            return;
+        mark(op.getSlot(), touched);
+        if (op instanceof VariableUser user)
+            mark(user.getSecondaryVariable(), touched);
+        if (op instanceof OpFunctionBase call && call.getArgs() != null)
+            mark(call.getArgs(), touched);
+    }
+
+    private void mark(List<AbstractArgument> arguments, BitSet touched) {
+        for (AbstractArgument arg : arguments) {
+            if (arg instanceof VariableArgument variable)
+                mark(variable.getVariable(), touched);
+            else if (arg instanceof FunctionArgument function && function.getArgument() != null)
+                mark(function.getArgument(), touched);
+        }
+    }
+
+    private void mark(VariableImpl variable, BitSet touched) {
+        mark(slots.find(variable), touched);
+    }
+
+    private void mark(int slot, BitSet touched) {
+        int candidate = candidateOf(slot);
+        if (candidate >= 0)
+            touched.set(candidate);
+    }
+
+    private int candidateOf(int slot) {
+        return slot >= 0 && slot < candidateOf.length ? candidateOf[slot] : -1;
+    }
+
+    // every work variable goes to the first register it has no conflict in, the other slots keep their order
+    private int[] assign(BitSet[] conflicts) {
+        int[] storage = new int[candidateOf.length];
+        List<BitSet> sharers = new ArrayList<>(); // the work variables in a shared register
+        List<Integer> registers = new ArrayList<>();
+        int next = 0;
+        for (int slot = 0; slot < storage.length; slot++) {
+            int candidate = candidateOf[slot];
+            if (candidate < 0) {
+                storage[slot] = next++;
+                continue;
+            }
+            int register = 0;
+            while (register < sharers.size() && conflicts[candidate].intersects(sharers.get(register)))
+                register++;
+            if (register == sharers.size()) {
+                sharers.add(new BitSet());
+                registers.add(next++);
+            }
+            sharers.get(register).set(candidate);
+            storage[slot] = registers.get(register);
+        }
+        return next == storage.length ? null : storage;
+    }
+}
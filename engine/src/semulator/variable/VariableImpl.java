@@ -1,27 +1,55 @@
 package semulator.variable;
+import java.util.Comparator;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * A variable of a program. There is one instance of every variable, the of methods return it,
+ * so variables compare by identity and hash with a hash worked out once.
+ * Every variable also gets a dense id, in the order variables are first asked for, for arrays indexed by variable.
+ */
 public class VariableImpl
 {
+    private static final ConcurrentHashMap<Long, VariableImpl> interned = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextId = new AtomicInteger();
+
     private final VariableType type;
     private final int number;
-    public static VariableImpl RESULT = new VariableImpl(VariableType.RESULT, 0);
+    private final int id;
+    private final String representation;
+    private final int hash;
+    public static VariableImpl RESULT = of(VariableType.RESULT, 0);
+
+    // the order variables are listed in, x1 x10 x2 .. y z1 ..
+    public static final Comparator<VariableImpl> BY_NAME = Comparator.comparing(VariableImpl::getRepresentation);
 
-    public VariableImpl(VariableType type, int number) {
+    private VariableImpl(VariableType type, int number, int id) {
         this.type = type;
         this.number = number;
+        this.id = id;
+        representation = type.getVariableRepresentation(number);
+        hash = Objects.hash(representation); // what it always was, hash sets of variables keep their order
     }
 
-    public VariableImpl(char type, int number) {
-        this.type = typeFromChar(type);
-        this.number = number;
+    public static VariableImpl of(VariableType type, int number) {
+        int key = type == VariableType.RESULT ? 0 : number; // there is one y whatever its number
+        Long packed = ((long) type.ordinal() << 32) | (key & 0xFFFFFFFFL);
+        VariableImpl variable = interned.get(packed);
+        if (variable != null)
+            return variable;
+        return interned.computeIfAbsent(packed, ignored -> new VariableImpl(type, key, nextId.getAndIncrement()));
+    }
+
+    public static VariableImpl of(char type, int number) {
+        return of(typeFromChar(type), number);
     }
 
-    public VariableImpl(String strVar) {
-        this(strVar.charAt(0), Integer.parseInt(strVar.substring(1)));
+    public static VariableImpl of(String strVar) {
+        return of(strVar.charAt(0), Integer.parseInt(strVar.substring(1)));
     }
 
-    private VariableType typeFromChar(char type) {
+    private static VariableType typeFromChar(char type) {
         return switch (type) {
             case 'x' -> VariableType.INPUT;
             case 'y' -> VariableType.RESULT;
@@ -34,24 +62,30 @@ public class VariableImpl
         return type;
     }
 
+    public int getNumber() {
+        return number;
+    }
+
+    public int getId() {
+        return id;
+    }
+
     public String getRepresentation() {
-        return type.getVariableRepresentation(number);
+        return representation;
     }
 
     @Override
-    public int hashCode() {//implement hashcode based on variable representation
-        return Objects.hash(getRepresentation());
+    public int hashCode() {
+        return hash;
     }
 
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        return Objects.equals(getRepresentation(), ((VariableImpl) o).getRepresentation());
+        return this == o; // one instance a variable
     }
 
   public VariableImpl myClone() {
-        return  new VariableImpl(type, number);
+        return this;
     }
 
 }
@@ -0,0 +1,99 @@
+package semulator.variable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Dense numbering of the variables of a program.
+ * Every variable gets a register slot the first time it is seen (on load or expansion),
+ * y is always slot 0 and slots are never taken back, so a bound op stays valid.
+ */
+public class VariableSlots {
+
+    public static final int NO_SLOT = -1;
+    public static final int RESULT_SLOT = 0;
+
+    private int[] slotById; // slot + 1 of a variable by its id, 0 where it has none
+    private int nullSlot;   // slot + 1 of an op with no variable, it gets a slot like any other
+    private final List<VariableImpl> variables;
+    private final BitSet workNumbers = new BitSet(); // n of every zn with a slot
+
+    public VariableSlots() {
+        slotById = new int[16];
+        variables = new ArrayList<>();
+        slotOf(VariableImpl.RESULT);
+    }
+
+    public VariableSlots(VariableSlots other) {
+        slotById = other.slotById.clone();
+        nullSlot = other.nullSlot;
+        variables = new ArrayList<>(other.variables);
+        workNumbers.or(other.workNumbers);
+    }
+
+    // the variables of other, the one in slot s moved to storage[s]. variables moved to the same slot share it,
+    // getVariable gives the first of them
+    public VariableSlots(VariableSlots other, int[] storage) {
+        slotById = new int[other.slotById.length];
+        variables = new ArrayList<>();
+        for (int slot = 0; slot < other.variables.size(); slot++) {
+            VariableImpl variable = other.variables.get(slot);
+            if (storage[slot] > variables.size())
+                throw new IllegalArgumentException("slot " + slot + " moves to " + storage[slot] + " before slot " + variables.size() + " is taken");
+            put(variable, storage[slot]);
+            if (storage[slot] == variables.size())
+                variables.add(variable);
+        }
+        workNumbers.or(other.workNumbers);
+    }
+
+    // returns the slot of the variable, assigning the next free one if it has none yet
+    public int slotOf(VariableImpl variable) {
+        int slot = find(variable);
+        if (slot == NO_SLOT) {
+            slot = variables.size();
+            variables.add(variable);
+            put(variable, slot);
+            if (variable != null && variable.getType() == VariableType.WORK)
+                workNumbers.set(variable.getNumber());
+        }
+        return slot;
+    }
+
+    private void put(VariableImpl variable, int slot) {
+        if (variable == null) {
+            nullSlot = slot + 1;
+            return;
+        }
+        int id = variable.getId();
+        if (id >= slotById.length)
+            slotById = Arrays.copyOf(slotById, Math.max(id + 1, 2 * slotById.length));
+        slotById[id] = slot + 1;
+    }
+
+    // the first n from on with no zn in the slots
+    public int nextFreeWorkNumber(int from) {
+        return workNumbers.nextClearBit(from);
+    }
+
+    public int find(VariableImpl variable) {
+        if (variable == null)
+            return nullSlot - 1;
+        int id = variable.getId();
+        return id < slotById.length ? slotById[id] - 1 : NO_SLOT;
+    }
+
+    public boolean contains(VariableImpl variable) {
+        return find(variable) != NO_SLOT;
+    }
+
+    public VariableImpl getVariable(int slot) {
+        return variables.get(slot);
+    }
+
+    public int size() {
+        return variables.size();
+    }
+}
@@ -21,18 +21,28 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.util.Duration;
-import javafx.util.Pair;
 
 import java.util.*;
 import java.util.function.UnaryOperator;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.io.PrintStream;
 import java.io.File;
 
 import semulator.impl.api.skeleton.AbstractOpBasic;
 import semulator.input.XmlTranslator.Factory;
+import semulator.program.ExecutionSession;
+import semulator.program.ExpansionCache;
+import semulator.program.ExpansionProgress;
 import semulator.program.FunctionExecutor;
+import semulator.execution.ParameterSweep;
 import semulator.execution.ProgramExecutorImpl;
+import semulator.execution.Snapshot;
+import semulator.execution.TraceLevel;
 import semulator.program.SprogramImpl;
 import semulator.variable.VariableImpl;
 
@@ -42,14 +52,16 @@ public class MainController {
     private FunctionExecutor program;
     private FunctionExecutor programCopy;
     private FunctionExecutor programWork;
+    private ExpansionCache expansions; // what programWork is at every degree that was shown
+    private int shownDegree;           // the degree programWork is expanded to
+    private Task<FunctionExecutor> expandTask; // the degree being expanded in the background, if any
     List <FunctionExecutor> functions;
     private int maxDegree;
     private boolean darkTheme = false;
     private String highlightText;
     private VBox paramBox;
     private final List<TextField> paramFields = new ArrayList<>();
-    private List<Pair<Integer, TreeMap<VariableImpl, Long>>> runListMap;
-    private int currentStepIndex = 0;
+    private ExecutionSession debugSession;
     private int currentHighlightedStep = -1;
     private int runHistoryCounter = 0;
     private final ObservableList<ProgramHistoryRow> historyRunData = FXCollections.observableArrayList();
@@ -59,6 +71,7 @@ public class MainController {
     @FXML private HBox runButtonsBox;
     @FXML private Button runButton;
     @FXML private Button debugButton;
+    @FXML private Button sweepButton;
     @FXML private Button stepOverButton;
     @FXML private Button stepBackButton;
     @FXML private Button stopButton;
@@ -71,6 +84,7 @@ public class MainController {
     @FXML private TextField expandField;
     @FXML private Button expandButton;
     @FXML private Button collapseButton;
+    @FXML private Button cancelExpandButton;
     @FXML private ComboBox<String> highlightComboBox;
     @FXML private ComboBox<String> funcsComboBox;
     @FXML private TableView<InstructionRow> instructionTable;
@@ -179,6 +193,92 @@ public class MainController {
         }
     }
 
+    @FXML
+    private void onSweep() {
+        TextInputDialog rangesDialog = new TextInputDialog();
+        rangesDialog.setTitle("Sweep");
+        rangesDialog.setHeaderText("Input ranges, like 0-500, 0-500.\nLeave empty to read the inputs from a CSV file.");
+        Optional<String> ranges = rangesDialog.showAndWait();
+        if (ranges.isEmpty())
+            return;
+
+        Stage stage = (Stage) filePathField.getScene().getWindow();
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files (*.csv)", "*.csv"));
+        File inputFile = null;
+        if (ranges.get().isBlank()) {
+            fileChooser.setTitle("Select Input CSV");
+            inputFile = fileChooser.showOpenDialog(stage);
+            if (inputFile == null)
+                return;
+        }
+        fileChooser.setTitle("Save Sweep Results");
+        File outputFile = fileChooser.showSaveDialog(stage);
+        if (outputFile == null)
+            return;
+
+        Iterator<long[]> rangeVectors = null;
+        if (inputFile == null) {
+            try {
+                rangeVectors = ParameterSweep.ranges(ranges.get());
+            } catch (IllegalArgumentException e) {
+                showAlert("Error", "Invalid sweep ranges:\n" + e.getMessage(), Alert.AlertType.ERROR);
+                return;
+            }
+        }
+        Iterator<long[]> vectors = rangeVectors;
+        File csvFile = inputFile;
+
+        ParameterSweep sweep = new ParameterSweep(programWork, ((SprogramImpl)programCopy).getFunctions());
+        int inputCount = programWork.getInputVarSize();
+        Task<Long> sweepTask = new Task<>() {
+            @Override
+            protected Long call() throws IOException {
+                try (BufferedReader reader = csvFile == null ? null : Files.newBufferedReader(csvFile.toPath());
+                     BufferedWriter writer = Files.newBufferedWriter(outputFile.toPath())) {
+                    writer.write(ParameterSweep.csvHeader(inputCount));
+                    writer.newLine();
+                    long[] written = {0};
+                    return sweep.run(reader == null ? vectors : ParameterSweep.csv(reader), result -> {
+                        try {
+                            writer.write(ParameterSweep.csvRow(result));
+                            writer.newLine();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        if (++written[0] % ParameterSweep.DEFAULT_BATCH_SIZE == 0)
+                            updateMessage("Sweep: " + written[0] + " runs done...");
+                    });
+                }
+            }
+        };
+
+        // the program must not change while the sweep reads it
+        enableProgramLock(true);
+        statusBar.textProperty().bind(sweepTask.messageProperty());
+        sweepTask.setOnSucceeded(e -> {
+            statusBar.textProperty().unbind();
+            enableProgramLock(false);
+            showStatus("Sweep finished: " + sweepTask.getValue() + " runs written to " + outputFile.getName(), Alert.AlertType.INFORMATION);
+        });
+        sweepTask.setOnFailed(e -> {
+            statusBar.textProperty().unbind();
+            enableProgramLock(false);
+            showAlert("Error", "Error while running the sweep:\n" + sweepTask.getException().getMessage(), Alert.AlertType.ERROR);
+        });
+        new Thread(sweepTask).start();
+    }
+
+    // the program must not change while a sweep reads it or a degree is expanded
+    private void enableProgramLock(boolean locked) {
+        runButton.setDisable(locked);
+        debugButton.setDisable(locked);
+        sweepButton.setDisable(locked);
+        expandButton.setDisable(locked);
+        collapseButton.setDisable(locked);
+        funcsComboBox.setDisable(locked);
+    }
+
     @FXML
     private void onStepOver() {
         stepOverRoutine();
@@ -186,11 +286,8 @@ public class MainController {
 
     @FXML
     private void onStepBackButton() {
-        if (currentStepIndex - 2 >= 0)
-        {
-            currentStepIndex -= 2;
-            stepOverRoutine();
-        }
+        if (debugSession != null && debugSession.stepBack())
+            showDebugStep();
     }
 
     @FXML
@@ -201,22 +298,52 @@ public class MainController {
 
     @FXML
     private void onResumeDebug() {
-        if (runListMap == null) return;
+        if (debugSession == null) return;
 
-        stepOverButton.setDisable(false);
+        ExecutionSession session = debugSession;
+        List<InstructionRow> rows = instructionTable.getItems();
+        boolean[] breakpoints = new boolean[rows.size()];
+        for (int i = 0; i < breakpoints.length; i++)
+            breakpoints[i] = rows.get(i).getBreakpoint();
 
-        while (currentStepIndex <= runListMap.size()) {
-            stepOverRoutine();
+        // the run goes on in the background so a program that never ends can still be stopped
+        enableDebugControls(false);
+        stopButton.setDisable(false);
+        runButton.setDisable(true);
+        debugButton.setDisable(true);
 
-            if (currentHighlightedStep == -1)
-                break;
-            // Optional: stop automatically if a breakpoint is reached
-            InstructionRow currentRow = instructionTable.getItems().get(currentHighlightedStep);
-            if (currentRow.getBreakpoint()) {
-                statusBar.setText("Paused at breakpoint: " + currentRow.getLabel());
-                break;
+        Task<Boolean> resumeTask = new Task<>() {
+            @Override
+            protected Boolean call() {
+                return session.runUntil(s -> s.getPc() >= 0 && s.getPc() < breakpoints.length && breakpoints[s.getPc()]);
             }
-        }
+        };
+
+        resumeTask.setOnSucceeded(e -> {
+            runButton.setDisable(false);
+            debugButton.setDisable(false);
+            if (session != debugSession) // stopped while running
+                return;
+            enableDebugControls(true);
+            showDebugStep();
+            if (!session.hasNext()) {
+                stopDebugging(true);
+                showStatus("Debug finished.", Alert.AlertType.INFORMATION);
+            } else if (resumeTask.getValue()) {
+                statusBar.setText("Paused at breakpoint: " + rows.get(currentHighlightedStep).getLabel());
+            }
+        });
+
+        resumeTask.setOnFailed(e -> {
+            runButton.setDisable(false);
+            debugButton.setDisable(false);
+            if (session != debugSession)
+                return;
+            stopDebugging(false);
+            showAlert("Error", "Error while running program:\n" + resumeTask.getException().getMessage(), Alert.AlertType.ERROR);
+        });
+
+        new Thread(resumeTask).start();
     }
 
     @FXML
@@ -234,6 +361,7 @@ public class MainController {
         runTask(loadTask);
     }
 
+    // expands to the degree in the field, or one degree further if the field shows the current degree
     @FXML
     private void onExpand() {
         int setDegree;
@@ -243,15 +371,18 @@ public class MainController {
             showAlert("Invalid input", "Please enter a valid number", Alert.AlertType.ERROR);
             return;
         }
+        if (setDegree == shownDegree)
+            setDegree++;
 
-        if (setDegree >= program.getProgramDegree()) {
-            showAlert("Invalid degree", "Max degree is " + program.getProgramDegree(), Alert.AlertType.ERROR);
+        if (setDegree > expansions.getMaxDegree()) {
+            showAlert("Invalid degree", "Max degree is " + expansions.getMaxDegree(), Alert.AlertType.ERROR);
             return;
         }
 
-        expand(setDegree + 1);
+        expand(setDegree);
     }
 
+    // collapses to the degree in the field, or one degree back if the field shows the current degree
     @FXML
     private void onCollapse() {
         int setDegree=1;
@@ -261,12 +392,24 @@ public class MainController {
             showAlert("Invalid input", "Please enter a valid number", Alert.AlertType.ERROR);
             return;
         }
+        if (setDegree == shownDegree)
+            setDegree--;
 
-        if (setDegree == 0) {
+        if (setDegree < 0) {
             showAlert("Invalid degree", "Min degree is 0", Alert.AlertType.ERROR);
             return;
         }
-        collapse(setDegree - 1);
+        if (setDegree > expansions.getMaxDegree()) {
+            showAlert("Invalid degree", "Max degree is " + expansions.getMaxDegree(), Alert.AlertType.ERROR);
+            return;
+        }
+        collapse(setDegree);
+    }
+
+    @FXML
+    private void onCancelExpand() {
+        if (expandTask != null)
+            expandTask.cancel();
     }
 
     @FXML
@@ -694,6 +837,7 @@ public class MainController {
     private void enableRunControls(boolean enable) {
         runButton.setDisable(!enable);
         debugButton.setDisable(!enable);
+        sweepButton.setDisable(!enable);
         debugTable.getItems().clear();
         debugTable.getSelectionModel().clearSelection();
         historyRunTable.getItems().clear();
@@ -711,7 +855,9 @@ public class MainController {
     private void resetDebugVars()
     {
         currentHighlightedStep = -1;
-        currentStepIndex = 0;
+        if (debugSession != null)
+            debugSession.close();
+        debugSession = null;
     }
 
     public void enableHistoryTable(boolean enable) {
@@ -728,14 +874,17 @@ public class MainController {
     }
 
     private void onFuncsSelection(String selected) {
-        if (selected == null || selected.equals("Program")) {
-            programWork = programCopy;
-        } else {
+        FunctionExecutor selectedProgram = programCopy;
+        if (selected != null && !selected.equals("Program")) {
             FunctionExecutor func = programCopy.getFunction(selected);
             if (func != null) {
-                programWork = func;
+                selectedProgram = func;
             }
         }
+        expansions = new ExpansionCache(selectedProgram);
+        programWork = expansions.get(0);
+        shownDegree = 0;
+        expandField.setText("0");
 
         debugTable.getItems().clear();
         debugTable.getSelectionModel().clearSelection();
@@ -786,18 +935,80 @@ public class MainController {
     }
 
     private void expand(int degree) {
-        resetProgramState();
-        programWork.expandProgram(1);
-        populateInstructionTable(programWork);
-        expandField.setText(String.valueOf(degree));
-        enableHistoryTable(true);
-        expandControlRoutine();
+        showDegree(degree);
     }
 
     private void collapse(int degree)
     {
+        showDegree(degree);
+    }
+
+    // every degree is expanded once, going back to one that was shown is a lookup.
+    // a new degree is expanded in the background and shows up in the table once it is done
+    private void showDegree(int degree) {
+        if (expansions.contains(degree)) {
+            publishDegree(degree, expansions.get(degree));
+            return;
+        }
+        ExpansionCache cache = expansions;
+        Task<FunctionExecutor> task = new Task<>() {
+            @Override
+            protected FunctionExecutor call() {
+                return cache.get(degree, new ExpansionProgress() {
+                    private int level;
+                    private int calls;
+
+                    @Override
+                    public void level(int level, int levels) {
+                        this.level = level;
+                        updateProgress(level - 1, levels);
+                    }
+
+                    @Override
+                    public void expanded(int ops, int workVars) {
+                        if (++calls % 256 == 0)
+                            updateMessage("Expanding to degree " + degree + ", level " + level + ": "
+                                    + ops + " ops, " + workVars + " work variables...");
+                    }
+                });
+            }
+        };
+
+        expandTask = task;
+        enableProgramLock(true);
+        cancelExpandButton.setDisable(false);
+        progressBar.progressProperty().bind(task.progressProperty());
+        statusBar.textProperty().bind(task.messageProperty());
+        task.setOnSucceeded(e -> {
+            endExpandTask();
+            if (cache == expansions)
+                publishDegree(degree, task.getValue());
+        });
+        task.setOnCancelled(e -> {
+            endExpandTask();
+            showStatus("Expansion to degree " + degree + " cancelled.", Alert.AlertType.INFORMATION);
+        });
+        task.setOnFailed(e -> {
+            endExpandTask();
+            showAlert("Error", "Error while expanding:\n" + task.getException().getMessage(), Alert.AlertType.ERROR);
+        });
+        new Thread(task).start();
+    }
+
+    private void endExpandTask() {
+        expandTask = null;
+        progressBar.progressProperty().unbind();
+        statusBar.textProperty().unbind();
+        progressBar.setProgress(0.0);
+        cancelExpandButton.setDisable(true);
+        enableProgramLock(false);
+    }
+
+    // the table goes from one finished program to the next in one swap
+    private void publishDegree(int degree, FunctionExecutor expanded) {
+        programWork = expanded;
+        shownDegree = degree;
         resetProgramState();
-        programWork.collapse();
         populateInstructionTable(programWork);
         expandField.setText(String.valueOf(degree));
         enableHistoryTable(true);
@@ -805,6 +1016,7 @@ public class MainController {
     }
 
     private void expandSingle(AbstractOpBasic op) {
+        expansions.forget(programWork); // it is not the program at its degree anymore
         resetProgramState();
         programWork.expandSingle(op, 1);
         populateInstructionTable(programWork);
@@ -812,6 +1024,7 @@ public class MainController {
     }
 
     private void collapseSingle(AbstractOpBasic op) {
+        expansions.forget(programWork);
         resetProgramState();
         programWork.collapseSingle(op, 1);
         populateInstructionTable(programWork);
@@ -927,7 +1140,9 @@ public class MainController {
                 program = task.getValue();
                 programCopy = program.myClone();
                 ((SprogramImpl)programCopy).calculateQuoteDegree();
-                programWork = programCopy;
+                expansions = new ExpansionCache(programCopy);
+                programWork = expansions.get(0);
+                shownDegree = 0;
                 functions = ((SprogramImpl)programCopy).getFunctions();
                 progressBar.progressProperty().unbind();
                 statusBar.textProperty().unbind();
@@ -980,11 +1195,14 @@ public class MainController {
             setStatistics();
     }
 
-    private int populateDebugTable(int stepIndex)
+    private int populateDebugTable()
     {
-        Pair<Integer, TreeMap<VariableImpl, Long>> currentStep = runListMap.get(stepIndex);
-        TreeMap<VariableImpl, Long> currentMap = currentStep.getValue();
+        showVariables(debugSession.getSnapshot());
+        return debugSession.getPc();
+    }
 
+    private void showVariables(TreeMap<VariableImpl, Long> currentMap)
+    {
         ObservableList<WatchDebugRow> data = FXCollections.observableArrayList();
 
         for( Map.Entry<VariableImpl, Long> entry :currentMap.entrySet()) {
@@ -994,37 +1212,38 @@ public class MainController {
             ));
         }
         debugTable.setItems(data);
-        return currentStep.getKey();
     }
 
     private void stepOverRoutine() {
-        if(runListMap == null)
+        if(debugSession == null)
         {
             stepOverButton.setDisable(true);
             return;
         }
-        if(currentStepIndex >= runListMap.size())
+        if(!debugSession.step())
         {
             stopDebugging(true);
             showStatus("Debug finished.", Alert.AlertType.INFORMATION);
             return;
         }
 
-        currentHighlightedStep = populateDebugTable(currentStepIndex);
-        currentStepIndex++;
-        Platform.runLater(() -> {
-            instructionTable.scrollTo(currentHighlightedStep);
-            instructionTable.refresh();
-        });
+        showDebugStep();
 
-        if(currentStepIndex >= runListMap.size())
+        if(!debugSession.hasNext())
         {
             stopDebugging(true);
             showStatus("Debug finished.", Alert.AlertType.INFORMATION);
-            return;
         }
     }
 
+    private void showDebugStep() {
+        currentHighlightedStep = populateDebugTable();
+        Platform.runLater(() -> {
+            instructionTable.scrollTo(currentHighlightedStep);
+            instructionTable.refresh();
+        });
+    }
+
     private List<Long> getUserVars() {
         List<Long> userVars = new ArrayList<>();
         long value;
@@ -1042,12 +1261,18 @@ public class MainController {
     private void runDebugRoutine()
     {
         List<Long> userVars = getUserVars();
-            runListMap = ProgramExecutorImpl.run(programWork, userVars, ((SprogramImpl)programCopy).getFunctions());
+            // steps are only computed as the user asks for them, step back undoes them
+            if (debugSession != null)
+                debugSession.close();
+            debugSession = ProgramExecutorImpl.startReversibleSession(programWork, userVars, ((SprogramImpl)programCopy).getFunctions());
 
-            currentStepIndex = 0;
-            stepOverButton.setDisable(runListMap == null || runListMap.isEmpty());
+            stepOverButton.setDisable(false);
             instructionTable.refresh();
-            onStepOver();
+            showDebugStep();
+            if (!debugSession.hasNext()) {
+                stopDebugging(true);
+                showStatus("Debug finished.", Alert.AlertType.INFORMATION);
+            }
     }
 
     private void setStatistics()
@@ -1079,11 +1304,13 @@ public class MainController {
         List<Long> userVars = getUserVars();
         stopDebugging(false);
 
-        runListMap = ProgramExecutorImpl.run(programWork, userVars, ((SprogramImpl)programCopy).getFunctions());
+        // a plain run only shows the final state, no need to keep the steps on the way
+        List<Snapshot> finalState =
+                ProgramExecutorImpl.run(programWork, userVars, ((SprogramImpl)programCopy).getFunctions(), TraceLevel.FINAL, 1);
 
-        if (runListMap != null && !runListMap.isEmpty()) {
+        if (!finalState.isEmpty()) {
             // Populate debug table for the last step
-            populateDebugTable(runListMap.size() - 1);
+            showVariables(finalState.getLast().getVariables());
         }
         // Update statistics
         setStatistics();